@@ -0,0 +1,223 @@
+package io.github.boeboe.useragent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.regex.Pattern;
+
+/**
+ * Reads the bundled {@code <device>.json} resources without Jackson or SLF4J.
+ * <p>
+ * GraalVM native images initialize {@link BundledUserAgents} at build time,
+ * and every class reached from there is initialized at build time as well.
+ * This reader only depends on JDK classes and on classes of this library that
+ * are listed in {@code META-INF/native-image}, so neither the application's
+ * logging backend nor Jackson end up initialized in the image heap.
+ * </p>
+ * <p>
+ * It reads the format of the bundled datasets the way {@link UserAgentLoader}
+ * does: a JSON array of objects with the properties {@code useragent} and
+ * {@code device}. Like Jackson, it accepts {@code null} and scalar values as
+ * text and rejects unknown properties. Files are probed per
+ * {@link DeviceFilter}, so the resource directory never needs to be listed;
+ * the tests check that both readers return the same user agents for every
+ * bundled directory.
+ * </p>
+ */
+final class BundledUserAgentReader {
+  private static final Pattern NUMBER = Pattern.compile("-?(?:0|[1-9]\\d*)(?:\\.\\d+)?(?:[eE][+-]?\\d+)?");
+
+  private final String text;
+  private final String resource;
+  private int pos;
+
+  private BundledUserAgentReader(String text, String resource) {
+    this.text = text;
+    this.resource = resource;
+  }
+
+  /**
+   * Reads the {@code <device>.json} files of a bundled resource directory.
+   *
+   * @param resourceDir The resource directory containing JSON files.
+   * @return Set of parsed user agents.
+   */
+  static Set<UserAgent> readUserAgents(String resourceDir) {
+    ClassLoader classLoader = BundledUserAgentReader.class.getClassLoader();
+    Set<UserAgent> userAgents = new HashSet<>();
+    for (DeviceFilter device : DeviceFilter.values()) {
+      String resource = resourceDir + device.toLowerCase() + ".json";
+      try (InputStream inputStream = classLoader.getResourceAsStream(resource)) {
+        if (inputStream != null) {
+          userAgents.addAll(read(new String(inputStream.readAllBytes(), StandardCharsets.UTF_8), resource));
+        }
+      } catch (IOException e) {
+        throw new RuntimeException("Failed to load user agents from: " + resource, e);
+      }
+    }
+    return userAgents;
+  }
+
+  /**
+   * Reads a JSON array of user agents.
+   *
+   * @param text     The JSON text.
+   * @param resource The name of the resource, used in error messages.
+   * @return List of parsed user agents.
+   * @throws IllegalStateException if the text is not a valid user agent array.
+   */
+  static List<UserAgent> read(String text, String resource) {
+    return new BundledUserAgentReader(text, resource).readArray();
+  }
+
+  private List<UserAgent> readArray() {
+    List<UserAgent> userAgents = new ArrayList<>();
+    if (!text.isEmpty() && text.charAt(0) == '\uFEFF') {
+      pos++;
+    }
+    expect('[');
+    if (peek() == ']') {
+      pos++;
+    } else {
+      do {
+        userAgents.add(readObject());
+      } while (next(',', ']') == ',');
+    }
+    return userAgents;
+  }
+
+  private UserAgent readObject() {
+    UserAgent userAgent = new UserAgent();
+    expect('{');
+    if (peek() == '}') {
+      pos++;
+      return userAgent;
+    }
+    do {
+      String key = readString();
+      expect(':');
+      String value = readValue();
+      if ("useragent".equals(key)) {
+        userAgent.setUserAgent(value);
+      } else if ("device".equals(key)) {
+        userAgent.setDevice(value == null ? null : DeviceFilter.fromString(value));
+      } else {
+        throw malformed("unknown property '" + key + "'");
+      }
+    } while (next(',', '}') == ',');
+    return userAgent;
+  }
+
+  /**
+   * Reads a string, or a scalar as its literal text, or {@code null}.
+   *
+   * @return The value as text, or null for a JSON null.
+   */
+  private String readValue() {
+    if (peek() == '"') {
+      return readString();
+    }
+    int start = pos;
+    while (pos < text.length() && ",}] \t\r\n".indexOf(text.charAt(pos)) < 0) {
+      pos++;
+    }
+    String literal = text.substring(start, pos);
+    if (literal.equals("null")) {
+      return null;
+    }
+    if (literal.equals("true") || literal.equals("false") || NUMBER.matcher(literal).matches()) {
+      return literal;
+    }
+    pos = start;
+    throw malformed("expected a string, number, boolean or null");
+  }
+
+  private String readString() {
+    expect('"');
+    StringBuilder sb = new StringBuilder();
+    while (pos < text.length()) {
+      char c = text.charAt(pos++);
+      if (c == '"') {
+        return sb.toString();
+      }
+      if (c != '\\') {
+        sb.append(c);
+        continue;
+      }
+      if (pos >= text.length()) {
+        break;
+      }
+      char escaped = text.charAt(pos++);
+      switch (escaped) {
+        case 'b':
+          sb.append('\b');
+          break;
+        case 'f':
+          sb.append('\f');
+          break;
+        case 'n':
+          sb.append('\n');
+          break;
+        case 'r':
+          sb.append('\r');
+          break;
+        case 't':
+          sb.append('\t');
+          break;
+        case 'u':
+          if (pos + 4 > text.length()) {
+            throw malformed("truncated unicode escape");
+          }
+          int code = 0;
+          for (int end = pos + 4; pos < end; pos++) {
+            int digit = Character.digit(text.charAt(pos), 16);
+            if (digit < 0) {
+              throw malformed("invalid unicode escape");
+            }
+            code = code * 16 + digit;
+          }
+          sb.append((char) code);
+          break;
+        case '"':
+        case '\\':
+        case '/':
+          sb.append(escaped);
+          break;
+        default:
+          throw malformed("invalid escape '\\" + escaped + "'");
+      }
+    }
+    throw malformed("unterminated string");
+  }
+
+  private char peek() {
+    while (pos < text.length() && Character.isWhitespace(text.charAt(pos))) {
+      pos++;
+    }
+    if (pos >= text.length()) {
+      throw malformed("unexpected end of input");
+    }
+    return text.charAt(pos);
+  }
+
+  private void expect(char expected) {
+    next(expected, expected);
+  }
+
+  private char next(char first, char second) {
+    char c = peek();
+    if (c != first && c != second) {
+      throw malformed("expected '" + first + "' or '" + second + "' but found '" + c + "'");
+    }
+    pos++;
+    return c;
+  }
+
+  private RuntimeException malformed(String reason) {
+    return new IllegalStateException("Malformed JSON in " + resource + " at offset " + pos + ": " + reason);
+  }
+}
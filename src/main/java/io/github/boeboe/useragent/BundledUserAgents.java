@@ -0,0 +1,49 @@
+package io.github.boeboe.useragent;
+
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Holds the user agents bundled in the {@code random/} and {@code latest/}
+ * resource directories.
+ * <p>
+ * The JSON datasets are parsed, indexed and clustered once, when this class is
+ * initialized. GraalVM native images initialize this class at build time (see
+ * {@code META-INF/native-image}), so the parsed dataset, its index and its
+ * clusters are stored in the image heap and no parsing happens at startup.
+ * Everything reached from here must therefore be listed there as well, which
+ * is why the resources are read by {@link BundledUserAgentReader} rather than
+ * the Jackson and SLF4J based {@link UserAgentLoader}.
+ * </p>
+ */
+final class BundledUserAgents {
+  static final String RANDOM_DIR = "random/";
+  static final String LATEST_DIR = "latest/";
+
+  /** User agents from the {@code random/} directory. */
+  static final Set<UserAgent> RANDOM = Collections.unmodifiableSet(BundledUserAgentReader.readUserAgents(RANDOM_DIR));
+
+  /** User agents from the {@code latest/} directory. */
+  static final Set<UserAgent> LATEST = Collections.unmodifiableSet(BundledUserAgentReader.readUserAgents(LATEST_DIR));
+
+  /** User agents from both directories. */
+  static final Set<UserAgent> ALL = Collections.unmodifiableSet(union(RANDOM, LATEST));
+
+  /** Parse results for {@link #ALL}, reused whenever the bundled source is composed. */
+  static final List<ParsedUserAgent> PARSED = Collections.unmodifiableList(ParsedUserAgent.parseAll(ALL));
+
+  /** Dataset of the bundled source alone, shared by all default providers. */
+  static final UserAgentDataset DATASET = new UserAgentDataset(Map.of(UserAgentSources.BUNDLED, PARSED));
+
+  private BundledUserAgents() {
+  }
+
+  private static Set<UserAgent> union(Set<UserAgent> first, Set<UserAgent> second) {
+    Set<UserAgent> union = new HashSet<>(first);
+    union.addAll(second);
+    return union;
+  }
+}
@@ -0,0 +1,156 @@
+package io.github.boeboe.useragent;
+
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Picks random user agents while avoiding near-duplicates of recent picks.
+ * <p>
+ * The provider clusters its user agents at load time by a normalized token
+ * signature, so user agents that only differ in build numbers share a cluster.
+ * This sampler picks a cluster uniformly among those not used within the last
+ * {@code windowSize} picks of the calling thread, then a user agent uniformly
+ * within that cluster. When fewer clusters are available than the window
+ * requires, only the most recent {@code clusters - 1} picks are avoided, so
+ * consecutive picks still never share a cluster.
+ * </p>
+ * <p>
+ * The sliding window is kept per thread, so picking is lock-free and a sampler
+ * can be shared by any number of threads. Each pick costs O(windowSize²) in the
+ * worst case, independent of the dataset size.
+ * </p>
+ *
+ * <pre>
+ * DiverseUserAgentSampler sampler = provider.createDiverseSampler(16);
+ * UserAgent ua = sampler.next(DeviceFilter.CHROME);
+ * </pre>
+ */
+public final class DiverseUserAgentSampler {
+
+  /** Sliding window of recently picked cluster ids for one thread. */
+  private static final class Window {
+    final int[] recent;
+    final int[] excluded;
+    int next;
+    int size;
+
+    Window(int windowSize) {
+      recent = new int[windowSize];
+      excluded = new int[windowSize];
+    }
+
+    void add(int clusterId) {
+      if (recent.length == 0) {
+        return;
+      }
+      recent[next] = clusterId;
+      next = (next + 1) % recent.length;
+      size = Math.min(size + 1, recent.length);
+    }
+  }
+
+  private final Supplier<UserAgentClusters> clusters;
+  private final int windowSize;
+  private final ThreadLocal<Window> windows;
+
+  /**
+   * Creates a sampler over the given clusters.
+   *
+   * @param clusters   Supplies the current clusters to pick from, so the sampler
+   *                   follows provider reloads.
+   * @param windowSize The number of recent picks whose clusters are avoided.
+   */
+  DiverseUserAgentSampler(Supplier<UserAgentClusters> clusters, int windowSize) {
+    if (windowSize < 0) {
+      throw new IllegalArgumentException("Window size must not be negative: " + windowSize);
+    }
+    this.clusters = clusters;
+    this.windowSize = windowSize;
+    this.windows = ThreadLocal.withInitial(() -> new Window(windowSize));
+  }
+
+  /**
+   * Returns the number of recent picks whose clusters are avoided.
+   *
+   * @return The window size.
+   */
+  public int getWindowSize() {
+    return windowSize;
+  }
+
+  /**
+   * Returns a random user agent from a cluster not used within the window.
+   *
+   * @return A randomly selected {@link UserAgent} or null if none exist.
+   */
+  public UserAgent next() {
+    return next(null);
+  }
+
+  /**
+   * Returns a random user agent of the given device type from a cluster not
+   * used within the window.
+   *
+   * @param device The device type to filter by; if null, no filtering is
+   *               applied.
+   * @return A randomly selected {@link UserAgent} matching the device filter, or
+   *         null if none exist.
+   */
+  public UserAgent next(DeviceFilter device) {
+    UserAgentClusters clusters = this.clusters.get();
+    int start = clusters.start(device);
+    int available = clusters.end(device) - start;
+    if (available == 0) {
+      return null;
+    }
+
+    Window window = windows.get();
+    int excludedCount = collectExcluded(window, start, start + available, available - 1);
+    ThreadLocalRandom random = ThreadLocalRandom.current();
+
+    // Pick uniformly among the non-excluded ids by skipping the excluded ones,
+    // which are sorted ascending.
+    int clusterId = start + random.nextInt(available - excludedCount);
+    for (int i = 0; i < excludedCount && window.excluded[i] <= clusterId; i++) {
+      clusterId++;
+    }
+    window.add(clusterId);
+
+    UserAgent[] cluster = clusters.get(clusterId);
+    return cluster[random.nextInt(cluster.length)].copy();
+  }
+
+  /**
+   * Collects the distinct cluster ids within {@code [start, end)} among the
+   * recent picks of a window, most recent first, into
+   * {@link Window#excluded} sorted ascending.
+   *
+   * @param window The window of the calling thread.
+   * @param start  The first cluster id in range (inclusive).
+   * @param end    The last cluster id in range (exclusive).
+   * @param limit  The maximum number of ids to collect.
+   * @return The number of collected ids.
+   */
+  private static int collectExcluded(Window window, int start, int end, int limit) {
+    int count = 0;
+    int[] recent = window.recent;
+    for (int i = 1; i <= window.size && count < limit; i++) {
+      int id = recent[(window.next - i + recent.length) % recent.length];
+      if (id >= start && id < end && !contains(window.excluded, count, id)) {
+        window.excluded[count++] = id;
+      }
+    }
+    Arrays.sort(window.excluded, 0, count);
+    return count;
+  }
+
+  private static boolean contains(int[] values, int length, int value) {
+    for (int i = 0; i < length; i++) {
+      if (values[i] == value) {
+        return true;
+      }
+    }
+    return false;
+  }
+}
@@ -0,0 +1,51 @@
+package io.github.boeboe.useragent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * A user agent together with the version and cluster signature parsed from it.
+ * <p>
+ * Parsing is the expensive part of indexing, so parse results are kept per
+ * source and reused when the index is rebuilt after another source changed.
+ * </p>
+ */
+final class ParsedUserAgent {
+  final UserAgent userAgent;
+  final UserAgentVersion version;
+  final String signature;
+
+  private ParsedUserAgent(UserAgent userAgent) {
+    this.userAgent = userAgent.copy();
+    this.version = UserAgentVersion.parse(userAgent.getUserAgent());
+    this.signature = UserAgentClusters.signature(userAgent.getUserAgent(), version);
+  }
+
+  /**
+   * Parses user agents. User agents without a string or device are skipped.
+   * Every user agent is copied, so later changes to the given instances do not
+   * leave the index built from the parse results out of date.
+   *
+   * @param userAgents The user agents to parse.
+   * @return The parsed user agents, in iteration order.
+   */
+  static List<ParsedUserAgent> parseAll(Collection<UserAgent> userAgents) {
+    List<ParsedUserAgent> parsed = new ArrayList<>(userAgents.size());
+    for (UserAgent ua : userAgents) {
+      if (ua != null && ua.getUserAgent() != null && ua.getDevice() != null) {
+        parsed.add(new ParsedUserAgent(ua));
+      }
+    }
+    return parsed;
+  }
+
+  /**
+   * Returns the key used to detect duplicates within a source.
+   *
+   * @return The device and user agent string.
+   */
+  String dedupKey() {
+    return userAgent.getDevice().name() + '\n' + userAgent.getUserAgent();
+  }
+}
@@ -1,5 +1,7 @@
 package io.github.boeboe.useragent;
 
+import java.util.Objects;
+
 import com.fasterxml.jackson.annotation.JsonProperty;
 
 /**
@@ -7,7 +9,10 @@ import com.fasterxml.jackson.annotation.JsonProperty;
  * <p>
  * This class holds the user agent string and the corresponding
  * {@link DeviceFilter}
- * type.
+ * type. Two user agents are equal when both their string and device type are
+ * equal. Since both are mutable, do not change a user agent while it is held
+ * in a hash-based collection such as the sets returned by
+ * {@link UserAgentProvider}; copy it into a new instance or a list first.
  * </p>
  * 
  * <p>
@@ -84,6 +89,33 @@ public class UserAgent {
     this.device = device;
   }
 
+  /**
+   * Creates a copy of this user agent. The provider hands out copies so that
+   * callers changing a user agent never affect the shared datasets.
+   *
+   * @return A new {@code UserAgent} with the same string and device type.
+   */
+  UserAgent copy() {
+    return new UserAgent(userAgent, device);
+  }
+
+  @Override
+  public boolean equals(Object o) {
+    if (this == o) {
+      return true;
+    }
+    if (!(o instanceof UserAgent)) {
+      return false;
+    }
+    UserAgent other = (UserAgent) o;
+    return Objects.equals(userAgent, other.userAgent) && device == other.device;
+  }
+
+  @Override
+  public int hashCode() {
+    return Objects.hash(userAgent, device);
+  }
+
   @Override
   public String toString() {
     return userAgent;
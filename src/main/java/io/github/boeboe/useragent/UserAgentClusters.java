@@ -0,0 +1,127 @@
+package io.github.boeboe.useragent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.EnumMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Clusters of user agents that look alike, built once at load time.
+ * <p>
+ * User agents are clustered per {@link DeviceFilter} by a normalized token
+ * signature: browser family and major version plus the platform comment with
+ * every version reduced to its major component and locale, {@code U} and
+ * {@code Build/...} tokens removed. User agents that only differ in build
+ * numbers therefore share a cluster.
+ * </p>
+ * <p>
+ * Clusters get consecutive ids, grouped by device, so the clusters of one
+ * device form the id range {@code [start(device), end(device))}.
+ * </p>
+ */
+final class UserAgentClusters {
+  private static final Pattern COMMENT = Pattern.compile("\\(([^)]*)\\)");
+  private static final Pattern BUILD = Pattern.compile("\\s*Build/[^;)]*");
+  private static final Pattern DOTTED_NUMBER = Pattern.compile("(\\d+)(?:[._]\\d+)+");
+  private static final Pattern NOISE = Pattern.compile("(?<=[(;\\s])(?:U|[a-z]{2}-[A-Z]{2})(?=[;)\\s])");
+  private static final Pattern SEPARATORS = Pattern.compile("[;\\s]+");
+
+  private final UserAgent[][] clusters;
+  private final int[] deviceStart = new int[DeviceFilter.values().length + 1];
+
+  /**
+   * Builds the clusters.
+   *
+   * @param userAgents The parsed user agents to cluster.
+   */
+  UserAgentClusters(Collection<ParsedUserAgent> userAgents) {
+    Map<DeviceFilter, Map<String, List<UserAgent>>> bySignature = new EnumMap<>(DeviceFilter.class);
+    for (ParsedUserAgent entry : userAgents) {
+      bySignature.computeIfAbsent(entry.userAgent.getDevice(), d -> new LinkedHashMap<>())
+          .computeIfAbsent(entry.signature, s -> new ArrayList<>())
+          .add(entry.userAgent);
+    }
+
+    List<UserAgent[]> ordered = new ArrayList<>();
+    for (DeviceFilter device : DeviceFilter.values()) {
+      deviceStart[device.ordinal()] = ordered.size();
+      for (List<UserAgent> cluster : bySignature.getOrDefault(device, Map.of()).values()) {
+        ordered.add(cluster.toArray(new UserAgent[0]));
+      }
+    }
+    deviceStart[DeviceFilter.values().length] = ordered.size();
+    clusters = ordered.toArray(new UserAgent[0][]);
+  }
+
+  /**
+   * Computes the normalized token signature of a user agent string.
+   *
+   * @param userAgent The user agent string.
+   * @return The signature (e.g. "chrome/132 (Windows NT 10 Win64 x64)").
+   */
+  static String signature(String userAgent) {
+    return signature(userAgent, UserAgentVersion.parse(userAgent));
+  }
+
+  /**
+   * Computes the normalized token signature of a user agent string whose
+   * version has already been parsed.
+   *
+   * @param userAgent The user agent string.
+   * @param version   The version parsed from {@code userAgent}.
+   * @return The signature.
+   */
+  static String signature(String userAgent, UserAgentVersion version) {
+    Matcher matcher = COMMENT.matcher(userAgent);
+    String comment = matcher.find() ? matcher.group(1) : "";
+    comment = BUILD.matcher(comment).replaceAll("");
+    comment = DOTTED_NUMBER.matcher(comment).replaceAll("$1");
+    comment = NOISE.matcher(" " + comment + " ").replaceAll("");
+    comment = SEPARATORS.matcher(comment).replaceAll(" ").trim();
+    return version.getBrowser() + "/" + version.getMajor() + " (" + comment + ")";
+  }
+
+  /**
+   * Returns the total number of clusters.
+   *
+   * @return The number of clusters.
+   */
+  int size() {
+    return clusters.length;
+  }
+
+  /**
+   * Returns the first cluster id of a device, or 0 for all devices.
+   *
+   * @param device The device type, or null for all devices.
+   * @return The first cluster id (inclusive).
+   */
+  int start(DeviceFilter device) {
+    return device == null ? 0 : deviceStart[device.ordinal()];
+  }
+
+  /**
+   * Returns the cluster id following the last one of a device, or
+   * {@link #size()} for all devices.
+   *
+   * @param device The device type, or null for all devices.
+   * @return The end cluster id (exclusive).
+   */
+  int end(DeviceFilter device) {
+    return device == null ? clusters.length : deviceStart[device.ordinal() + 1];
+  }
+
+  /**
+   * Returns the user agents in a cluster.
+   *
+   * @param id The cluster id.
+   * @return The user agents of the cluster; never empty.
+   */
+  UserAgent[] get(int id) {
+    return clusters[id];
+  }
+}
@@ -0,0 +1,126 @@
+package io.github.boeboe.useragent;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Immutable snapshot of the user agents of a provider, merged from one or more
+ * sources, together with the structures derived from them.
+ * <p>
+ * Sources are merged in priority order (highest first). A user agent string
+ * belongs to the highest priority source that contains it: that source's
+ * entries for the string mask the entries of all lower priority sources, so
+ * a higher source can move a user agent to another device or keep it to
+ * fewer devices. Within a source, duplicates by device and user agent string
+ * are dropped, so every user agent is kept once and random picks are uniform
+ * over distinct user agents. The parse results are kept per source, so
+ * {@link #replace} only needs the changed source to be parsed again.
+ * </p>
+ */
+final class UserAgentDataset {
+  private final Map<String, List<ParsedUserAgent>> sources;
+
+  final Set<UserAgent> all;
+  final Set<UserAgent> latest;
+  final UserAgentIndex index;
+  final UserAgentClusters clusters;
+
+  /** {@link #all} per device ordinal, with all devices at the last index. */
+  private final UserAgent[][] allByDevice;
+  /** {@link #latest} per device ordinal, with all devices at the last index. */
+  private final UserAgent[][] latestByDevice;
+
+  /**
+   * Merges the parsed user agents of the given sources.
+   *
+   * @param sources Parsed user agents per source name, highest priority first.
+   */
+  UserAgentDataset(Map<String, List<ParsedUserAgent>> sources) {
+    this.sources = Collections.unmodifiableMap(new LinkedHashMap<>(sources));
+
+    int total = 0;
+    for (List<ParsedUserAgent> parsed : sources.values()) {
+      total += parsed.size();
+    }
+    Map<String, String> ownerByUserAgent = new HashMap<>(total * 4 / 3 + 1);
+    Set<String> merged = new HashSet<>(total * 4 / 3 + 1);
+    List<ParsedUserAgent> unique = new ArrayList<>(total);
+    for (Map.Entry<String, List<ParsedUserAgent>> source : sources.entrySet()) {
+      for (ParsedUserAgent entry : source.getValue()) {
+        String owner = ownerByUserAgent.putIfAbsent(entry.userAgent.getUserAgent(), source.getKey());
+        if ((owner == null || owner.equals(source.getKey())) && merged.add(entry.dedupKey())) {
+          unique.add(entry);
+        }
+      }
+    }
+
+    Set<UserAgent> userAgents = new HashSet<>(unique.size() * 4 / 3 + 1);
+    for (ParsedUserAgent entry : unique) {
+      userAgents.add(entry.userAgent);
+    }
+    this.all = Collections.unmodifiableSet(userAgents);
+    this.index = new UserAgentIndex(unique);
+    this.latest = Collections.unmodifiableSet(index.getLatestUserAgents());
+    this.clusters = new UserAgentClusters(unique);
+    this.allByDevice = byDevice(all);
+    this.latestByDevice = byDevice(latest);
+  }
+
+  /**
+   * Returns all user agents of a device type as an array to pick from.
+   *
+   * @param device The device type, or null for all devices.
+   * @return The user agents; must not be modified.
+   */
+  UserAgent[] all(DeviceFilter device) {
+    return allByDevice[device == null ? allByDevice.length - 1 : device.ordinal()];
+  }
+
+  /**
+   * Returns the latest user agents of a device type as an array to pick from.
+   *
+   * @param device The device type, or null for all devices.
+   * @return The user agents; must not be modified.
+   */
+  UserAgent[] latest(DeviceFilter device) {
+    return latestByDevice[device == null ? latestByDevice.length - 1 : device.ordinal()];
+  }
+
+  private static UserAgent[][] byDevice(Set<UserAgent> userAgents) {
+    DeviceFilter[] devices = DeviceFilter.values();
+    List<List<UserAgent>> lists = new ArrayList<>(devices.length);
+    for (int i = 0; i < devices.length; i++) {
+      lists.add(new ArrayList<>());
+    }
+    for (UserAgent ua : userAgents) {
+      lists.get(ua.getDevice().ordinal()).add(ua);
+    }
+
+    UserAgent[][] byDevice = new UserAgent[devices.length + 1][];
+    for (int i = 0; i < devices.length; i++) {
+      byDevice[i] = lists.get(i).toArray(new UserAgent[0]);
+    }
+    byDevice[devices.length] = userAgents.toArray(new UserAgent[0]);
+    return byDevice;
+  }
+
+  /**
+   * Returns a new snapshot with the user agents of one source replaced. The
+   * other sources are not parsed again.
+   *
+   * @param source The name of the source that changed.
+   * @param parsed The new parsed user agents of that source.
+   * @return The new snapshot.
+   */
+  UserAgentDataset replace(String source, List<ParsedUserAgent> parsed) {
+    Map<String, List<ParsedUserAgent>> updated = new LinkedHashMap<>(sources);
+    updated.replace(source, parsed);
+    return new UserAgentDataset(updated);
+  }
+}
@@ -0,0 +1,144 @@
+package io.github.boeboe.useragent;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Version index over a set of user agents, built once at load time.
+ * <p>
+ * Per {@link DeviceFilter}, user agents are grouped by browser and platform
+ * (see {@link UserAgentVersion}) and every group is sorted newest first.
+ * Version numbers are only compared within a browser family: every entry is
+ * ranked by its lag, the number of major versions it trails the newest major
+ * of its browser family on that device. From that the index derives:
+ * </p>
+ * <ul>
+ * <li>a newest-first ordering per device: entries at most
+ * {@value #MAX_MAJOR_LAG} majors behind their family come first, then all
+ * others. On a device that also has maintained browsers, entries of
+ * discontinued browser families (see {@link UserAgentVersion#isDiscontinued()})
+ * are never current, whatever their lag. Within each part entries are ordered by lag, and equal lags take
+ * the newest entry of every group before the second newest of any group, so
+ * the top K entries span as many browsers and platforms as possible;</li>
+ * <li>the latest user agents: per device, the first
+ * {@value #LATEST_PER_DEVICE} current entries of that ordering, so "latest"
+ * follows the data instead of manual curation.</li>
+ * </ul>
+ */
+final class UserAgentIndex {
+
+  /** Maximum number of latest user agents derived per device. */
+  static final int LATEST_PER_DEVICE = 10;
+
+  /** Maximum number of major versions a current user agent may trail its browser family. */
+  static final int MAX_MAJOR_LAG = 2;
+
+  /** Newest first within a group, ties broken by user agent string for a stable order. */
+  private static final Comparator<ParsedUserAgent> NEWEST_FIRST = Comparator
+      .comparing((ParsedUserAgent e) -> e.version).reversed()
+      .thenComparing(e -> e.userAgent.getUserAgent());
+
+  /** Current entries first, then by lag, rank within the group and a stable tie-break. */
+  private static final Comparator<Ranked> MOST_RECENT_FIRST = Comparator
+      .comparing((Ranked r) -> !r.current)
+      .thenComparingInt(r -> r.lag)
+      .thenComparingInt(r -> r.rank)
+      .thenComparing(r -> r.entry.version.getGroup())
+      .thenComparing(r -> r.entry.userAgent.getUserAgent());
+
+  /** An entry with its position within its group, its lag behind its family and whether it is current. */
+  private static final class Ranked {
+    final ParsedUserAgent entry;
+    final int rank;
+    final int lag;
+    final boolean current;
+
+    Ranked(ParsedUserAgent entry, int rank, int lag, boolean current) {
+      this.entry = entry;
+      this.rank = rank;
+      this.lag = lag;
+      this.current = current;
+    }
+  }
+
+  private final Map<DeviceFilter, List<UserAgent>> newestByDevice = new EnumMap<>(DeviceFilter.class);
+  private final Set<UserAgent> latestUserAgents = new HashSet<>();
+
+  /**
+   * Builds the index.
+   *
+   * @param userAgents The parsed user agents to index.
+   */
+  UserAgentIndex(Collection<ParsedUserAgent> userAgents) {
+    Map<DeviceFilter, Map<String, List<ParsedUserAgent>>> groupsByDevice = new EnumMap<>(DeviceFilter.class);
+    for (ParsedUserAgent entry : userAgents) {
+      groupsByDevice.computeIfAbsent(entry.userAgent.getDevice(), d -> new HashMap<>())
+          .computeIfAbsent(entry.version.getGroup(), g -> new ArrayList<>())
+          .add(entry);
+    }
+
+    for (Map.Entry<DeviceFilter, Map<String, List<ParsedUserAgent>>> device : groupsByDevice.entrySet()) {
+      Collection<List<ParsedUserAgent>> groups = device.getValue().values();
+      Map<String, Integer> newestMajorByBrowser = new HashMap<>();
+      boolean maintained = false;
+      int size = 0;
+      for (List<ParsedUserAgent> group : groups) {
+        group.sort(NEWEST_FIRST);
+        size += group.size();
+        UserAgentVersion head = group.get(0).version;
+        newestMajorByBrowser.merge(head.getBrowser(), head.getMajor(), Math::max);
+        maintained |= !head.isDiscontinued();
+      }
+
+      List<Ranked> ranked = new ArrayList<>(size);
+      for (List<ParsedUserAgent> group : groups) {
+        for (int r = 0; r < group.size(); r++) {
+          ParsedUserAgent entry = group.get(r);
+          int lag = newestMajorByBrowser.get(entry.version.getBrowser()) - entry.version.getMajor();
+          boolean current = lag <= MAX_MAJOR_LAG && !(maintained && entry.version.isDiscontinued());
+          ranked.add(new Ranked(entry, r, lag, current));
+        }
+      }
+      ranked.sort(MOST_RECENT_FIRST);
+
+      List<UserAgent> newest = new ArrayList<>(size);
+      for (Ranked entry : ranked) {
+        newest.add(entry.entry.userAgent);
+        if (entry.current && newest.size() <= LATEST_PER_DEVICE) {
+          latestUserAgents.add(entry.entry.userAgent);
+        }
+      }
+      newestByDevice.put(device.getKey(), Collections.unmodifiableList(newest));
+    }
+  }
+
+  /**
+   * Returns the latest user agents derived from version ordering.
+   *
+   * @return Set of latest user agents.
+   */
+  Set<UserAgent> getLatestUserAgents() {
+    return latestUserAgents;
+  }
+
+  /**
+   * Returns the newest user agents for a device, newest first. The returned
+   * list is a view, so this is O(1) and iterating it is O(count).
+   *
+   * @param device The device type.
+   * @param count  The maximum number of user agents to return.
+   * @return Up to {@code count} user agents, newest first.
+   */
+  List<UserAgent> getNewestUserAgents(DeviceFilter device, int count) {
+    List<UserAgent> newest = newestByDevice.getOrDefault(device, Collections.emptyList());
+    return newest.subList(0, Math.min(count, newest.size()));
+  }
+}
@@ -0,0 +1,189 @@
+package io.github.boeboe.useragent;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URL;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarFile;
+import java.util.stream.Collectors;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import com.fasterxml.jackson.databind.JavaType;
+import com.fasterxml.jackson.databind.ObjectMapper;
+
+/**
+ * Loads user agents from JSON files embedded as classpath resources or
+ * available at a URL.
+ * <p>
+ * Resource directories are listed from the file system or from a JAR. For any
+ * other protocol (e.g. {@code resource:} inside a GraalVM native image) the
+ * directory cannot be listed, so the loader probes for one file per
+ * {@link DeviceFilter} instead, following the {@code <device>.json} naming of
+ * the bundled datasets.
+ * </p>
+ */
+final class UserAgentLoader {
+  private static final Logger logger = LoggerFactory.getLogger(UserAgentLoader.class);
+
+  private static final ObjectMapper MAPPER = new ObjectMapper();
+  private static final JavaType USER_AGENT_LIST = MAPPER.getTypeFactory()
+      .constructCollectionType(List.class, UserAgent.class);
+
+  private UserAgentLoader() {
+  }
+
+  /**
+   * Loads user agents from JSON files in a given directory inside resources.
+   *
+   * @param resourceDir The resource directory containing JSON files.
+   * @param classLoader The class loader to resolve the resources with.
+   * @return Set of parsed user agents.
+   */
+  static Set<UserAgent> loadUserAgents(String resourceDir, ClassLoader classLoader) {
+    Set<UserAgent> userAgents = new HashSet<>();
+    List<String> jsonFiles = listJsonFiles(resourceDir, classLoader);
+    for (String filePath : jsonFiles) {
+      try {
+        List<UserAgent> parsedAgents = readUserAgentsFromFile(filePath, classLoader);
+        userAgents.addAll(parsedAgents);
+        logger.debug("Loaded {} user agents from {}", parsedAgents.size(), filePath);
+      } catch (IOException e) {
+        logger.error("Failed to load user agents from {}: {}", filePath, e.getMessage());
+        throw new RuntimeException("Failed to load user agents from: " + filePath, e);
+      }
+    }
+    return userAgents;
+  }
+
+  /**
+   * Retrieves all JSON file names in the given resource directory.
+   *
+   * @param resourceDir The directory inside `src/main/resources` (or JAR).
+   * @param classLoader The class loader to resolve the directory with.
+   * @return List of JSON file paths.
+   */
+  private static List<String> listJsonFiles(String resourceDir, ClassLoader classLoader) {
+    try {
+      URL resourceURL = classLoader.getResource(resourceDir);
+      if (resourceURL == null) {
+        logger.error("Resource directory not found: {}", resourceDir);
+        throw new RuntimeException("Resource directory not found: " + resourceDir);
+      }
+
+      switch (resourceURL.getProtocol()) {
+        case "file":
+          logger.debug("Listing JSON files from file system: {}", resourceDir);
+          return listJsonFilesFromFileSystem(resourceURL, resourceDir);
+        case "jar":
+          logger.debug("Listing JSON files from JAR: {}", resourceDir);
+          return listJsonFilesFromJar(resourceURL, resourceDir);
+        default:
+          logger.debug("Probing JSON files per device for protocol {}: {}", resourceURL.getProtocol(), resourceDir);
+          return listJsonFilesByDevice(resourceDir, classLoader);
+      }
+    } catch (Exception e) {
+      logger.error("Failed to list JSON files in {}: {}", resourceDir, e.getMessage());
+      throw new RuntimeException("Failed to list JSON files in: " + resourceDir, e);
+    }
+  }
+
+  /**
+   * Retrieves JSON file names from a directory in the file system.
+   *
+   * @param resourceURL The URL pointing to the resource directory.
+   * @param resourceDir The directory path inside resources.
+   * @return List of JSON file paths.
+   * @throws Exception If reading fails.
+   */
+  private static List<String> listJsonFilesFromFileSystem(URL resourceURL, String resourceDir) throws Exception {
+    java.io.File dir = new java.io.File(resourceURL.toURI());
+    String[] files = dir.list((d, name) -> name.endsWith(".json"));
+
+    if (files == null || files.length == 0) {
+      return Collections.emptyList();
+    }
+
+    return Arrays.stream(files)
+        .map(name -> resourceDir + name)
+        .collect(Collectors.toList());
+  }
+
+  /**
+   * Retrieves JSON file names from a directory inside a JAR file.
+   *
+   * @param resourceURL The URL pointing to the resource inside the JAR.
+   * @param resourceDir The directory path inside the JAR.
+   * @return List of JSON file paths.
+   * @throws Exception If reading fails.
+   */
+  private static List<String> listJsonFilesFromJar(URL resourceURL, String resourceDir) throws Exception {
+    String jarPath = resourceURL.getPath().substring(5, resourceURL.getPath().indexOf("!"));
+
+    try (JarFile jarFile = new JarFile(jarPath)) {
+      return jarFile.stream()
+          .map(JarEntry::getName)
+          .filter(name -> name.startsWith(resourceDir) && name.endsWith(".json"))
+          .collect(Collectors.toList());
+    }
+  }
+
+  /**
+   * Retrieves JSON file names for resource locations that cannot be listed, by
+   * probing for a {@code <device>.json} file per {@link DeviceFilter}.
+   *
+   * @param resourceDir The directory path inside resources.
+   * @param classLoader The class loader to probe with.
+   * @return List of JSON file paths that exist.
+   */
+  private static List<String> listJsonFilesByDevice(String resourceDir, ClassLoader classLoader) {
+    List<String> files = new ArrayList<>();
+    for (DeviceFilter device : DeviceFilter.values()) {
+      String filePath = resourceDir + device.toLowerCase() + ".json";
+      if (classLoader.getResource(filePath) != null) {
+        files.add(filePath);
+      }
+    }
+    return files;
+  }
+
+  /**
+   * Reads a list of user agents from a JSON document at a URL.
+   *
+   * @param url URL of the JSON document (e.g. a file or HTTP URL).
+   * @return List of parsed UserAgent objects.
+   * @throws IOException If reading fails.
+   */
+  static List<UserAgent> readUserAgents(URL url) throws IOException {
+    try (InputStream inputStream = url.openStream()) {
+      List<UserAgent> parsedAgents = MAPPER.readValue(inputStream, USER_AGENT_LIST);
+      logger.debug("Loaded {} user agents from {}", parsedAgents.size(), url);
+      return parsedAgents;
+    }
+  }
+
+  /**
+   * Reads a list of user agents from a JSON file inside resources.
+   *
+   * @param resourcePath Path to the JSON file in the classpath.
+   * @param classLoader  The class loader to resolve the file with.
+   * @return List of parsed UserAgent objects.
+   * @throws IOException If reading fails.
+   */
+  private static List<UserAgent> readUserAgentsFromFile(String resourcePath, ClassLoader classLoader)
+      throws IOException {
+    try (InputStream inputStream = classLoader.getResourceAsStream(resourcePath)) {
+      if (inputStream == null) {
+        throw new IOException("Resource not found: " + resourcePath);
+      }
+      return MAPPER.readValue(inputStream, USER_AGENT_LIST);
+    }
+  }
+}
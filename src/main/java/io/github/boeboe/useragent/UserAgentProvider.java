@@ -1,63 +1,182 @@
 package io.github.boeboe.useragent;
 
 import java.io.IOException;
-import java.io.InputStream;
-import java.net.URL;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Collection;
 import java.util.Collections;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.ServiceLoader;
 import java.util.Set;
+import java.util.WeakHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 import java.util.concurrent.ThreadLocalRandom;
-import java.util.jar.JarEntry;
-import java.util.jar.JarFile;
-import java.util.stream.Collectors;
-
-import org.slf4j.Logger;
-import org.slf4j.LoggerFactory;
-
-import com.fasterxml.jackson.core.type.TypeReference;
-import com.fasterxml.jackson.databind.ObjectMapper;
 
 /**
- * Provides user agents from embedded JSON files inside the JAR.
+ * Provides user agents from one or more {@link UserAgentSource}s, by default
+ * the JSON files embedded inside the JAR.
+ * <p>
+ * The latest user agents are derived from the browser versions in the dataset:
+ * per device, the newest user agents that are at most a few major versions
+ * behind the newest release of their browser.
+ * </p>
+ * <p>
+ * A provider is safe to share between threads. Sources can be reloaded with
+ * {@link #reload(String)}; readers keep seeing the previous dataset until the
+ * reloaded one is complete.
+ * </p>
  */
 public class UserAgentProvider {
-  private static final Logger logger = LoggerFactory.getLogger(UserAgentProvider.class);
 
-  private static final ObjectMapper MAPPER = new ObjectMapper();
-  private static final String RANDOM_DIR = "random/";
-  private static final String LATEST_DIR = "latest/";
+  /** Maximum number of threads used to load sources in parallel. */
+  private static final int MAX_LOADER_THREADS = 4;
+
+  /**
+   * Class loaders known to register no sources. Keys are weak, so class loaders
+   * can still be unloaded; nothing loaded by them is referenced.
+   */
+  private static final Map<ClassLoader, Boolean> WITHOUT_SOURCES = Collections.synchronizedMap(new WeakHashMap<>());
 
-  private final Set<UserAgent> allUserAgents = new HashSet<>();
-  private final Set<UserAgent> latestUserAgents = new HashSet<>();
+  private final Map<String, UserAgentSource> sources;
+  private volatile UserAgentDataset dataset;
 
   /**
-   * Initializes the provider by loading user agents from resources.
+   * Initializes the provider with the user agents bundled as resources, plus
+   * any {@link UserAgentSource} registered with {@link ServiceLoader} in the
+   * context class loader of the calling thread.
+   * <p>
+   * The bundled JSON files are parsed and indexed only once per class loader
+   * (or at build time in a native image) and shared by all providers. A class
+   * loader found to register no sources is remembered and not scanned again,
+   * so without registered sources constructing further providers is cheap.
+   * When sources are registered, every constructor discovers and loads them
+   * anew.
+   * </p>
    */
   public UserAgentProvider() {
-    loadUserAgents(RANDOM_DIR, allUserAgents);
-    loadUserAgents(LATEST_DIR, latestUserAgents);
-    allUserAgents.addAll(latestUserAgents);
+    List<UserAgentSource> discovered = discoverSources();
+    if (discovered.isEmpty()) {
+      sources = Map.of(UserAgentSources.BUNDLED, UserAgentSources.bundled());
+      dataset = BundledUserAgents.DATASET;
+    } else {
+      discovered.add(0, UserAgentSources.bundled());
+      sources = orderByPriority(discovered);
+      dataset = loadAll(sources.values());
+    }
   }
 
   /**
-   * Returns all loaded user agents.
+   * Initializes the provider with a user-supplied dataset instead of the
+   * bundled resources. The latest user agents are derived from it the same way.
+   *
+   * @param userAgents The user agents to provide.
+   */
+  public UserAgentProvider(Collection<UserAgent> userAgents) {
+    this(UserAgentSources.of("user", userAgents, 0));
+  }
+
+  /**
+   * Initializes the provider with the user agents of the given sources, loaded
+   * in parallel on a dedicated pool and merged in priority order. Include
+   * {@link UserAgentSources#bundled()} to keep the bundled user agents.
+   *
+   * @param sources The sources to compose; names must be unique.
+   * @throws IllegalArgumentException if two sources have the same name.
+   * @throws RuntimeException         if a source fails to load.
+   */
+  public UserAgentProvider(UserAgentSource... sources) {
+    this.sources = orderByPriority(Arrays.asList(sources));
+    this.dataset = loadAll(this.sources.values());
+  }
+
+  /**
+   * Reloads one source and rebuilds the dataset. Only the reloaded source is
+   * loaded and parsed again; the other sources reuse their previous results.
+   * Concurrent readers are not blocked.
+   *
+   * @param sourceName The name of the source to reload.
+   * @throws IllegalArgumentException if no source has that name.
+   * @throws RuntimeException         if the source fails to load; the previous
+   *                                  dataset is kept.
+   */
+  public synchronized void reload(String sourceName) {
+    UserAgentSource source = sources.get(sourceName);
+    if (source == null) {
+      throw new IllegalArgumentException("Unknown user agent source: " + sourceName);
+    }
+    dataset = dataset.replace(sourceName, loadSource(source));
+  }
+
+  /**
+   * Returns copies of all loaded user agents. Changing them does not affect
+   * this or any other provider, but the returned set hashes its elements, so
+   * copy them into a list before changing them.
    *
    * @return Set of all user agents.
    */
   public Set<UserAgent> getAllUserAgents() {
-    return Collections.unmodifiableSet(allUserAgents);
+    return copyAll(dataset.all);
   }
 
   /**
-   * Returns only the latest user agents.
+   * Returns copies of the latest user agents. Changing them does not affect
+   * this or any other provider, but the returned set hashes its elements, so
+   * copy them into a list before changing them.
    *
    * @return Set of latest user agents.
    */
   public Set<UserAgent> getLatestUserAgents() {
-    return Collections.unmodifiableSet(latestUserAgents);
+    return copyAll(dataset.latest);
+  }
+
+  /**
+   * Returns the newest user agents for a device type, newest first. Versions
+   * are compared within a browser only: entries at most two major versions
+   * behind the newest release of their browser come first, ordered by how far
+   * they trail it, and the newest entry of every browser/platform combination
+   * comes before the second newest of any, so the first entries cover the
+   * device as broadly as possible.
+   * <p>
+   * The ordering is computed when the provider is created, so this runs in
+   * O(count).
+   * </p>
+   *
+   * @param device The device type to filter by.
+   * @param count  The maximum number of user agents to return.
+   * @return Unmodifiable list of up to {@code count} user agents.
+   * @throws IllegalArgumentException if {@code count} is negative.
+   */
+  public List<UserAgent> getNewestUserAgents(DeviceFilter device, int count) {
+    if (count < 0) {
+      throw new IllegalArgumentException("Count must not be negative: " + count);
+    }
+    List<UserAgent> shared = dataset.index.getNewestUserAgents(device, count);
+    List<UserAgent> newest = new ArrayList<>(shared.size());
+    for (UserAgent ua : shared) {
+      newest.add(ua.copy());
+    }
+    return Collections.unmodifiableList(newest);
+  }
+
+  /**
+   * Creates a sampler that picks random user agents from all user agents while
+   * avoiding near-duplicates of the last {@code windowSize} picks of the calling
+   * thread. The sampler is thread-safe and meant to be shared.
+   *
+   * @param windowSize The number of recent picks whose near-duplicates are
+   *                   avoided.
+   * @return A new {@link DiverseUserAgentSampler}.
+   * @throws IllegalArgumentException if {@code windowSize} is negative.
+   */
+  public DiverseUserAgentSampler createDiverseSampler(int windowSize) {
+    return new DiverseUserAgentSampler(() -> dataset.clusters, windowSize);
   }
 
   /**
@@ -66,7 +185,7 @@ public class UserAgentProvider {
    * @return A randomly selected {@link UserAgent} or null if none exist.
    */
   public UserAgent getRandomLatestUserAgent() {
-    return getRandomUserAgentFromSet(latestUserAgents, null);
+    return getRandomUserAgentFromSet(dataset.latest(null));
   }
 
   /**
@@ -75,7 +194,7 @@ public class UserAgentProvider {
    * @return A randomly selected {@link UserAgent} or null if none exist.
    */
   public UserAgent getRandomUserAgent() {
-    return getRandomUserAgentFromSet(allUserAgents, null);
+    return getRandomUserAgentFromSet(dataset.all(null));
   }
 
   /**
@@ -86,7 +205,7 @@ public class UserAgentProvider {
    *         null if none exist.
    */
   public UserAgent getRandomLatestUserAgent(DeviceFilter device) {
-    return getRandomUserAgentFromSet(latestUserAgents, device);
+    return getRandomUserAgentFromSet(dataset.latest(device));
   }
 
   /**
@@ -98,137 +217,150 @@ public class UserAgentProvider {
    *         null if none exist.
    */
   public UserAgent getRandomUserAgent(DeviceFilter device) {
-    return getRandomUserAgentFromSet(allUserAgents, device);
+    return getRandomUserAgentFromSet(dataset.all(device));
   }
 
   /**
-   * Loads user agents from JSON files in a given directory inside resources.
+   * Discovers the sources registered in the context class loader, skipping
+   * the scan for class loaders already known to register none.
    *
-   * @param resourceDir The resource directory containing JSON files.
-   * @param targetList  The set where parsed user agents should be stored.
+   * @return The discovered sources, in discovery order.
    */
-  private void loadUserAgents(String resourceDir, Set<UserAgent> targetList) {
-    List<String> jsonFiles = listJsonFiles(resourceDir);
-    for (String filePath : jsonFiles) {
-      try {
-        List<UserAgent> parsedAgents = readUserAgentsFromFile(filePath);
-        targetList.addAll(parsedAgents);
-        logger.debug("Loaded {} user agents from {}", parsedAgents.size(), filePath);
-      } catch (IOException e) {
-        logger.error("Failed to load user agents from {}: {}", filePath, e.getMessage());
-        throw new RuntimeException("Failed to load user agents from: " + filePath, e);
-      }
+  private static List<UserAgentSource> discoverSources() {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    if (classLoader == null) {
+      classLoader = ClassLoader.getSystemClassLoader();
+    }
+    if (WITHOUT_SOURCES.containsKey(classLoader)) {
+      return new ArrayList<>();
     }
+    List<UserAgentSource> discovered = UserAgentSources.discover(classLoader);
+    if (discovered.isEmpty()) {
+      WITHOUT_SOURCES.put(classLoader, Boolean.TRUE);
+    }
+    return discovered;
   }
 
   /**
-   * Retrieves all JSON file names in the given resource directory.
+   * Orders sources by descending priority, keeping the given order for equal
+   * priorities.
    *
-   * @param resourceDir The directory inside `src/main/resources` (or JAR).
-   * @return List of JSON file paths.
+   * @param sources The sources to order.
+   * @return The sources by name, highest priority first.
    */
-  private List<String> listJsonFiles(String resourceDir) {
-    try {
-      URL resourceURL = getClass().getClassLoader().getResource(resourceDir);
-      if (resourceURL == null) {
-        logger.error("Resource directory not found: {}", resourceDir);
-        throw new RuntimeException("Resource directory not found: " + resourceDir);
-      }
+  private static Map<String, UserAgentSource> orderByPriority(List<UserAgentSource> sources) {
+    List<UserAgentSource> ordered = new ArrayList<>(sources);
+    ordered.sort(Comparator.comparingInt(UserAgentSource::getPriority).reversed());
 
-      switch (resourceURL.getProtocol()) {
-        case "file":
-          logger.debug("Listing JSON files from file system: {}", resourceDir);
-          return listJsonFilesFromFileSystem(resourceURL, resourceDir);
-        case "jar":
-          logger.debug("Listing JSON files from JAR: {}", resourceDir);
-          return listJsonFilesFromJar(resourceURL, resourceDir);
-        default:
-          logger.error("Unsupported resource protocol: {}", resourceURL.getProtocol());
-          throw new IOException("Unsupported resource protocol: " + resourceURL.getProtocol());
+    Map<String, UserAgentSource> byName = new LinkedHashMap<>();
+    for (UserAgentSource source : ordered) {
+      if (byName.putIfAbsent(source.getName(), source) != null) {
+        throw new IllegalArgumentException("Duplicate user agent source: " + source.getName());
       }
-    } catch (Exception e) {
-      logger.error("Failed to list JSON files in {}: {}", resourceDir, e.getMessage());
-      throw new RuntimeException("Failed to list JSON files in: " + resourceDir, e);
     }
+    return Collections.unmodifiableMap(byName);
   }
 
   /**
-   * Retrieves JSON file names from a directory in the file system.
+   * Loads and parses all sources in parallel and merges them.
+   * <p>
+   * Sources may block on I/O, so they are loaded on a dedicated, bounded pool
+   * of daemon threads that is shut down afterwards, rather than on the common
+   * fork/join pool shared with the rest of the application.
+   * </p>
    *
-   * @param resourceURL The URL pointing to the resource directory.
-   * @param resourceDir The directory path inside resources.
-   * @return List of JSON file paths.
-   * @throws Exception If reading fails.
+   * @param sources The sources, highest priority first.
+   * @return The merged dataset.
    */
-  private List<String> listJsonFilesFromFileSystem(URL resourceURL, String resourceDir) throws Exception {
-    java.io.File dir = new java.io.File(resourceURL.toURI());
-    String[] files = dir.list((d, name) -> name.endsWith(".json"));
-
-    if (files == null || files.length == 0) {
-      return Collections.emptyList();
+  private static UserAgentDataset loadAll(Collection<UserAgentSource> sources) {
+    List<UserAgentSource> ordered = new ArrayList<>(sources);
+    List<List<ParsedUserAgent>> parsed = new ArrayList<>(ordered.size());
+    if (ordered.size() <= 1) {
+      for (UserAgentSource source : ordered) {
+        parsed.add(loadSource(source));
+      }
+    } else {
+      ExecutorService executor = Executors.newFixedThreadPool(Math.min(ordered.size(), MAX_LOADER_THREADS), task -> {
+        Thread thread = new Thread(task, "user-agent-source-loader");
+        thread.setDaemon(true);
+        return thread;
+      });
+      try {
+        List<Future<List<ParsedUserAgent>>> futures = new ArrayList<>(ordered.size());
+        for (UserAgentSource source : ordered) {
+          futures.add(executor.submit(() -> loadSource(source)));
+        }
+        for (Future<List<ParsedUserAgent>> future : futures) {
+          parsed.add(future.get());
+        }
+      } catch (ExecutionException e) {
+        if (e.getCause() instanceof RuntimeException) {
+          throw (RuntimeException) e.getCause();
+        }
+        if (e.getCause() instanceof Error) {
+          throw (Error) e.getCause();
+        }
+        throw new RuntimeException("Failed to load user agent sources", e.getCause());
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new RuntimeException("Interrupted while loading user agent sources", e);
+      } finally {
+        executor.shutdownNow();
+      }
     }
 
-    return Arrays.stream(files)
-        .map(name -> resourceDir + name)
-        .collect(Collectors.toList());
+    Map<String, List<ParsedUserAgent>> bySource = new LinkedHashMap<>();
+    for (int i = 0; i < ordered.size(); i++) {
+      bySource.put(ordered.get(i).getName(), parsed.get(i));
+    }
+    return new UserAgentDataset(bySource);
   }
 
   /**
-   * Retrieves JSON file names from a directory inside a JAR file.
+   * Loads and parses the user agents of one source.
    *
-   * @param resourceURL The URL pointing to the resource inside the JAR.
-   * @param resourceDir The directory path inside the JAR.
-   * @return List of JSON file paths.
-   * @throws Exception If reading fails.
+   * @param source The source to load.
+   * @return The parsed user agents.
    */
-  private List<String> listJsonFilesFromJar(URL resourceURL, String resourceDir) throws Exception {
-    String jarPath = resourceURL.getPath().substring(5, resourceURL.getPath().indexOf("!"));
-
-    try (JarFile jarFile = new JarFile(jarPath)) {
-      return jarFile.stream()
-          .map(JarEntry::getName)
-          .filter(name -> name.startsWith(resourceDir) && name.endsWith(".json"))
-          .collect(Collectors.toList());
+  private static List<ParsedUserAgent> loadSource(UserAgentSource source) {
+    if (source instanceof UserAgentSources.BundledSource) {
+      return BundledUserAgents.PARSED;
+    }
+    try {
+      Collection<UserAgent> userAgents = source.load();
+      return ParsedUserAgent.parseAll(userAgents == null ? Collections.emptyList() : userAgents);
+    } catch (IOException e) {
+      throw new RuntimeException("Failed to load user agents from source: " + source.getName(), e);
     }
   }
 
   /**
-   * Reads a list of user agents from a JSON file inside resources.
+   * Retrieves a random user agent from the user agents of one device type (or
+   * all devices), prepared per device when the dataset is built, so a pick is
+   * O(1) and allocates only the returned copy.
    *
-   * @param resourcePath Path to the JSON file in the classpath.
-   * @return List of parsed UserAgent objects.
-   * @throws IOException If reading fails.
+   * @param userAgents The user agents to pick from.
+   * @return A copy of a randomly selected {@link UserAgent}, or null if none
+   *         exist.
    */
-  private List<UserAgent> readUserAgentsFromFile(String resourcePath) throws IOException {
-    try (InputStream inputStream = getClass().getClassLoader().getResourceAsStream(resourcePath)) {
-      if (inputStream == null) {
-        throw new IOException("Resource not found: " + resourcePath);
-      }
-      return MAPPER.readValue(inputStream, new TypeReference<List<UserAgent>>() {
-      });
+  private UserAgent getRandomUserAgentFromSet(UserAgent[] userAgents) {
+    if (userAgents.length == 0) {
+      return null;
     }
+    return userAgents[ThreadLocalRandom.current().nextInt(userAgents.length)].copy();
   }
 
   /**
-   * Retrieves a random user agent from a given set, with optional filtering by
-   * device type.
+   * Copies user agents, so the shared instances never reach callers.
    *
-   * @param userAgents The set of user agents to pick from.
-   * @param device     (Optional) The device type to filter by; if null, no
-   *                   filtering is applied.
-   * @return A randomly selected {@link UserAgent} matching the device filter, or
-   *         null if none exist.
+   * @param userAgents The user agents to copy.
+   * @return An unmodifiable set of copies.
    */
-  private UserAgent getRandomUserAgentFromSet(Set<UserAgent> userAgents, DeviceFilter device) {
-    List<UserAgent> filteredAgents = (device == null)
-        ? new ArrayList<>(userAgents)
-        : userAgents.stream()
-            .filter(ua -> ua.getDevice() == device)
-            .collect(Collectors.toList());
-
-    if (filteredAgents.isEmpty()) {
-      return null;
+  private static Set<UserAgent> copyAll(Set<UserAgent> userAgents) {
+    Set<UserAgent> copies = new HashSet<>(userAgents.size() * 4 / 3 + 1);
+    for (UserAgent ua : userAgents) {
+      copies.add(ua.copy());
     }
-    return filteredAgents.get(ThreadLocalRandom.current().nextInt(filteredAgents.size()));
+    return Collections.unmodifiableSet(copies);
   }
 }
\ No newline at end of file
@@ -0,0 +1,55 @@
+package io.github.boeboe.useragent;
+
+import java.io.IOException;
+import java.util.Collection;
+
+/**
+ * A source of user agents that can be composed with other sources in a
+ * {@link UserAgentProvider}.
+ * <p>
+ * Sources are merged in priority order: when several sources contain the same
+ * user agent string, only the entries of the source with the highest priority
+ * are kept, for whichever devices that source lists it. Implementations can be registered in
+ * {@code META-INF/services/io.github.boeboe.useragent.UserAgentSource} to be
+ * picked up by {@link UserAgentProvider#UserAgentProvider()}; factories for
+ * common sources are in {@link UserAgentSources}.
+ * </p>
+ *
+ * <pre>
+ * UserAgentProvider provider = new UserAgentProvider(
+ *     UserAgentSources.bundled(),
+ *     UserAgentSources.file("mine", Paths.get("useragents.json"), 10));
+ * </pre>
+ */
+public interface UserAgentSource {
+
+  /**
+   * Returns the name of this source, unique within a provider. The name is used
+   * to reload the source with {@link UserAgentProvider#reload(String)}.
+   *
+   * @return The source name.
+   */
+  String getName();
+
+  /**
+   * Returns the priority of this source. Sources with a higher priority win
+   * when user agent strings are duplicated across sources, so they can
+   * override the device of a bundled user agent. The bundled source has
+   * priority 0.
+   *
+   * @return The source priority.
+   */
+  default int getPriority() {
+    return 0;
+  }
+
+  /**
+   * Loads the user agents of this source. Called when a provider is created
+   * and whenever the source is reloaded, possibly concurrently with other
+   * sources.
+   *
+   * @return The user agents of this source.
+   * @throws IOException If loading fails.
+   */
+  Collection<UserAgent> load() throws IOException;
+}
@@ -0,0 +1,189 @@
+package io.github.boeboe.useragent;
+
+import java.io.IOException;
+import java.net.URL;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.ServiceLoader;
+import java.util.stream.Collectors;
+
+/**
+ * Factories for common {@link UserAgentSource} implementations.
+ * <p>
+ * File and URL sources read the same JSON format as the bundled datasets: an
+ * array of objects with a {@code useragent} and a {@code device} field.
+ * </p>
+ */
+public final class UserAgentSources {
+
+  /** Name of the source holding the bundled datasets. */
+  public static final String BUNDLED = "bundled";
+
+  private UserAgentSources() {
+  }
+
+  /**
+   * Returns the source holding the user agents bundled with this library, with
+   * priority 0.
+   *
+   * @return The bundled source.
+   */
+  public static UserAgentSource bundled() {
+    return BundledSource.INSTANCE;
+  }
+
+  /**
+   * Creates a source reading all JSON files of a classpath resource directory,
+   * resolved with the context class loader of the calling thread (or the
+   * library's class loader if there is none).
+   *
+   * @param name        The source name.
+   * @param resourceDir The resource directory (e.g. "useragents/").
+   * @param priority    The source priority.
+   * @return A classpath source.
+   */
+  public static UserAgentSource classpath(String name, String resourceDir, int priority) {
+    ClassLoader classLoader = Thread.currentThread().getContextClassLoader();
+    return classpath(name, resourceDir, classLoader != null ? classLoader : UserAgentSources.class.getClassLoader(),
+        priority);
+  }
+
+  /**
+   * Creates a source reading all JSON files of a classpath resource directory,
+   * resolved with the given class loader. Sources discovered through
+   * {@link ServiceLoader} should pass their own class loader, so their
+   * resources are found even when the library sits in a parent class loader.
+   *
+   * @param name        The source name.
+   * @param resourceDir The resource directory (e.g. "useragents/").
+   * @param classLoader The class loader to resolve the resources with.
+   * @param priority    The source priority.
+   * @return A classpath source.
+   */
+  public static UserAgentSource classpath(String name, String resourceDir, ClassLoader classLoader, int priority) {
+    Objects.requireNonNull(resourceDir, "resourceDir");
+    Objects.requireNonNull(classLoader, "classLoader");
+    return new SimpleSource(name, priority) {
+      @Override
+      public Collection<UserAgent> load() {
+        return UserAgentLoader.loadUserAgents(resourceDir, classLoader);
+      }
+    };
+  }
+
+  /**
+   * Creates a source reading a JSON file. The file is read again on every
+   * reload.
+   *
+   * @param name     The source name.
+   * @param file     The JSON file.
+   * @param priority The source priority.
+   * @return A file source.
+   */
+  public static UserAgentSource file(String name, Path file, int priority) {
+    Objects.requireNonNull(file, "file");
+    return new SimpleSource(name, priority) {
+      @Override
+      public Collection<UserAgent> load() throws IOException {
+        return UserAgentLoader.readUserAgents(file.toUri().toURL());
+      }
+    };
+  }
+
+  /**
+   * Creates a source reading a JSON document from a URL (e.g. an HTTP
+   * endpoint). The URL is fetched again on every reload.
+   *
+   * @param name     The source name.
+   * @param url      The URL of the JSON document.
+   * @param priority The source priority.
+   * @return A URL source.
+   */
+  public static UserAgentSource url(String name, URL url, int priority) {
+    Objects.requireNonNull(url, "url");
+    return new SimpleSource(name, priority) {
+      @Override
+      public Collection<UserAgent> load() throws IOException {
+        return UserAgentLoader.readUserAgents(url);
+      }
+    };
+  }
+
+  /**
+   * Creates a source holding a fixed collection of user agents. The
+   * collection is read again on every reload, so changes to it are picked up.
+   *
+   * @param name       The source name.
+   * @param userAgents The user agents.
+   * @param priority   The source priority.
+   * @return An in-memory source.
+   */
+  public static UserAgentSource of(String name, Collection<UserAgent> userAgents, int priority) {
+    Objects.requireNonNull(userAgents, "userAgents");
+    return new SimpleSource(name, priority) {
+      @Override
+      public Collection<UserAgent> load() {
+        return new ArrayList<>(userAgents);
+      }
+    };
+  }
+
+  /**
+   * Discovers the sources registered with {@link ServiceLoader}. Every call
+   * scans the class loader for service files and creates new source instances.
+   *
+   * @param classLoader The class loader to discover sources with.
+   * @return The discovered sources, in discovery order.
+   */
+  public static List<UserAgentSource> discover(ClassLoader classLoader) {
+    List<UserAgentSource> sources = new ArrayList<>();
+    ServiceLoader.load(UserAgentSource.class, classLoader).forEach(sources::add);
+    return sources;
+  }
+
+  /** Base class for sources with a fixed name and priority. */
+  private abstract static class SimpleSource implements UserAgentSource {
+    private final String name;
+    private final int priority;
+
+    SimpleSource(String name, int priority) {
+      this.name = Objects.requireNonNull(name, "name");
+      this.priority = priority;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int getPriority() {
+      return priority;
+    }
+
+    @Override
+    public String toString() {
+      return name;
+    }
+  }
+
+  /**
+   * The bundled datasets. Providers use the already parsed
+   * {@link BundledUserAgents#PARSED} for it instead of calling {@link #load()}.
+   */
+  static final class BundledSource extends SimpleSource {
+    static final BundledSource INSTANCE = new BundledSource();
+
+    private BundledSource() {
+      super(BUNDLED, 0);
+    }
+
+    @Override
+    public Collection<UserAgent> load() {
+      return BundledUserAgents.ALL.stream().map(UserAgent::copy).collect(Collectors.toList());
+    }
+  }
+}
@@ -0,0 +1,173 @@
+package io.github.boeboe.useragent;
+
+import java.util.Arrays;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * Browser family, platform and version parsed from a user agent string.
+ * <p>
+ * Versions are compared numerically component by component, so
+ * {@code 132.0.6834.164} is newer than {@code 55.0.3373.356}. User agents
+ * without a recognizable browser token get browser {@code "other"} and an empty
+ * version, which is older than any parsed version. Browser families that no
+ * longer receive releases, such as Internet Explorer, are reported as
+ * discontinued.
+ * </p>
+ */
+final class UserAgentVersion implements Comparable<UserAgentVersion> {
+  private static final String VERSION = "(\\d+(?:\\.\\d+)*)";
+
+  /** Browser tokens, most specific first (e.g. Edge also carries a Chrome token). */
+  private static final String[] BROWSERS = {
+      "edge", "opera", "vivaldi", "samsung", "firefox", "explorer", "explorer", "chrome", "safari" };
+  private static final Pattern[] BROWSER_PATTERNS = {
+      Pattern.compile("(?:Edg|EdgA|EdgiOS|Edge)/" + VERSION),
+      Pattern.compile("(?:OPR|OPT|Opera)/" + VERSION),
+      Pattern.compile("Vivaldi/" + VERSION),
+      Pattern.compile("SamsungBrowser/" + VERSION),
+      Pattern.compile("(?:Firefox|FxiOS)/" + VERSION),
+      Pattern.compile("MSIE " + VERSION),
+      Pattern.compile("Trident/.*rv:" + VERSION),
+      Pattern.compile("(?:Chrome|CriOS)/" + VERSION),
+      Pattern.compile("Version/" + VERSION + ".*Safari/") };
+
+  /** Browser families that no longer receive releases. */
+  private static final String DISCONTINUED = "explorer";
+
+  private static final int[] NO_VERSION = new int[0];
+
+  private final String browser;
+  private final String platform;
+  private final int[] version;
+
+  private UserAgentVersion(String browser, String platform, int[] version) {
+    this.browser = browser;
+    this.platform = platform;
+    this.version = version;
+  }
+
+  /**
+   * Parses the browser family, platform and version of a user agent string.
+   *
+   * @param userAgent The user agent string.
+   * @return The parsed version, never null.
+   */
+  static UserAgentVersion parse(String userAgent) {
+    String platform = parsePlatform(userAgent);
+    for (int i = 0; i < BROWSER_PATTERNS.length; i++) {
+      Matcher matcher = BROWSER_PATTERNS[i].matcher(userAgent);
+      if (matcher.find()) {
+        return new UserAgentVersion(BROWSERS[i], platform, parseVersion(matcher.group(1)));
+      }
+    }
+    return new UserAgentVersion("other", platform, NO_VERSION);
+  }
+
+  /**
+   * Derives the platform of a user agent string from its well-known tokens.
+   *
+   * @param userAgent The user agent string.
+   * @return The platform name.
+   */
+  private static String parsePlatform(String userAgent) {
+    if (userAgent.contains("iPad")) {
+      return "ipad";
+    } else if (userAgent.contains("iPod")) {
+      return "ipod";
+    } else if (userAgent.contains("iPhone")) {
+      return "iphone";
+    } else if (userAgent.contains("Android")) {
+      return "android";
+    } else if (userAgent.contains("CrOS")) {
+      return "chromeos";
+    } else if (userAgent.contains("Windows")) {
+      return "windows";
+    } else if (userAgent.contains("Macintosh") || userAgent.contains("Mac OS X")) {
+      return "macos";
+    } else if (userAgent.contains("Linux") || userAgent.contains("X11")) {
+      return "linux";
+    }
+    return "other";
+  }
+
+  /**
+   * Parses a dotted version string into its numeric components.
+   *
+   * @param value The dotted version string (e.g. "132.0.6834.164").
+   * @return The numeric version components.
+   */
+  private static int[] parseVersion(String value) {
+    String[] parts = value.split("\\.");
+    int[] components = new int[parts.length];
+    for (int i = 0; i < parts.length; i++) {
+      try {
+        components[i] = Integer.parseInt(parts[i]);
+      } catch (NumberFormatException e) {
+        // Component overflows an int; keep what was parsed so far
+        return Arrays.copyOf(components, i);
+      }
+    }
+    return components;
+  }
+
+  /**
+   * Returns the browser family (e.g. "chrome", "firefox").
+   *
+   * @return The browser family.
+   */
+  String getBrowser() {
+    return browser;
+  }
+
+  /**
+   * Returns whether the browser family no longer receives releases, so even
+   * its newest version is not a current user agent.
+   *
+   * @return True if the browser family is discontinued.
+   */
+  boolean isDiscontinued() {
+    return DISCONTINUED.equals(browser);
+  }
+
+  /**
+   * Returns the platform (e.g. "windows", "android").
+   *
+   * @return The platform.
+   */
+  String getPlatform() {
+    return platform;
+  }
+
+  /**
+   * Returns the key of the browser/platform group this version belongs to.
+   *
+   * @return The group key (e.g. "chrome/windows").
+   */
+  String getGroup() {
+    return browser + "/" + platform;
+  }
+
+  /**
+   * Returns the major version, or -1 if no version was parsed.
+   *
+   * @return The major version.
+   */
+  int getMajor() {
+    return version.length == 0 ? -1 : version[0];
+  }
+
+  @Override
+  public int compareTo(UserAgentVersion other) {
+    return Arrays.compare(version, other.version);
+  }
+
+  @Override
+  public String toString() {
+    StringBuilder sb = new StringBuilder(getGroup()).append(' ');
+    for (int i = 0; i < version.length; i++) {
+      sb.append(i == 0 ? "" : ".").append(version[i]);
+    }
+    return sb.toString();
+  }
+}
@@ -0,0 +1,312 @@
+package io.github.boeboe.useragent;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntFunction;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Concurrency stress tests for {@link UserAgentProvider}.
+ * <p>
+ * A single provider is shared by many platform and virtual threads that
+ * hammer selection, filtering and sampling, also while a source is reloaded.
+ * The tests assert that no call returns null or throws (e.g.
+ * {@link java.util.ConcurrentModificationException}), that concurrent random
+ * picks follow the dataset distribution, and record a throughput scaling curve
+ * in {@code target/stress/scaling.csv}.
+ * </p>
+ * <p>
+ * Wall-clock thresholds on that curve are only enforced with
+ * {@code -Dstress.enforce=true} ({@code make stress}), so shared build runners
+ * do not fail the regular build on timing noise.
+ * </p>
+ */
+class UserAgentProviderConcurrencyIT {
+
+  private static final Logger logger = LoggerFactory.getLogger(UserAgentProviderConcurrencyIT.class);
+  private static final int[] THREAD_COUNTS = { 1, 2, 4, 8, 16, 32 };
+  private static final long RUN_MILLIS = 500;
+  private static final Path SCALING_CSV = Paths.get("target", "stress", "scaling.csv");
+  private static final DeviceFilter[] DEVICES = DeviceFilter.values();
+  private static final boolean ENFORCE = Boolean.getBoolean("stress.enforce");
+
+  private UserAgentProvider userAgentProvider;
+  private DiverseUserAgentSampler sampler;
+
+  @BeforeEach
+  void setUp() {
+    userAgentProvider = new UserAgentProvider();
+    sampler = userAgentProvider.createDiverseSampler(16);
+  }
+
+  /**
+   * Hammers all read paths from many platform threads.
+   */
+  @Test
+  void testConcurrentReadsOnPlatformThreads() throws Exception {
+    long ops = hammer(Executors::newFixedThreadPool, 16, RUN_MILLIS);
+    assertTrue(ops > 0, "Expected operations to complete");
+    logger.info("{} operations on 16 platform threads without failures", ops);
+  }
+
+  /**
+   * Hammers all read paths from many virtual threads.
+   */
+  @Test
+  void testConcurrentReadsOnVirtualThreads() throws Exception {
+    long ops = hammer(threads -> Executors.newVirtualThreadPerTaskExecutor(), 1_000, RUN_MILLIS);
+    assertTrue(ops > 0, "Expected operations to complete");
+    logger.info("{} operations on 1000 virtual threads without failures", ops);
+  }
+
+  /**
+   * Ensures random picks made concurrently follow the distribution of devices
+   * in the dataset.
+   */
+  @Test
+  void testConcurrentRandomPicksFollowDistribution() throws Exception {
+    int threads = 8;
+    int picksPerThread = 2_500;
+    Map<DeviceFilter, LongAdder> observed = new EnumMap<>(DeviceFilter.class);
+    for (DeviceFilter device : DEVICES) {
+      observed.put(device, new LongAdder());
+    }
+
+    runOnThreads(Executors.newFixedThreadPool(threads), threads, () -> {
+      for (int i = 0; i < picksPerThread; i++) {
+        UserAgent ua = userAgentProvider.getRandomUserAgent();
+        assertNotNull(ua, "Random user agent should not be null");
+        observed.get(ua.getDevice()).increment();
+      }
+    });
+
+    double total = threads * picksPerThread;
+    Set<UserAgent> dataset = userAgentProvider.getAllUserAgents();
+    Map<DeviceFilter, Long> inDataset = dataset.stream()
+        .collect(Collectors.groupingBy(UserAgent::getDevice, () -> new EnumMap<>(DeviceFilter.class),
+            Collectors.counting()));
+    for (DeviceFilter device : DEVICES) {
+      double expected = inDataset.getOrDefault(device, 0L) / (double) dataset.size();
+      double actual = observed.get(device).sum() / total;
+      assertEquals(expected, actual, 0.02, "Pick share of " + device + " should match its dataset share");
+    }
+  }
+
+  /**
+   * Ensures the diverse sampler keeps its window per thread, so concurrent
+   * threads never see a cluster repeat within their own window.
+   */
+  @Test
+  void testDiverseSamplerWindowIsPerThread() throws Exception {
+    int threads = 16;
+    runOnThreads(Executors.newVirtualThreadPerTaskExecutor(), threads, () -> {
+      Deque<String> window = new ArrayDeque<>();
+      for (int i = 0; i < 2_000; i++) {
+        UserAgent ua = sampler.next(DeviceFilter.EXPLORER);
+        String cluster = UserAgentClusters.signature(ua.getUserAgent());
+        assertFalse(window.contains(cluster), "Cluster repeated within the window: " + cluster);
+        window.addLast(cluster);
+        if (window.size() > sampler.getWindowSize()) {
+          window.removeFirst();
+        }
+      }
+    });
+  }
+
+  /**
+   * Hammers all read paths while another thread keeps reloading one of the
+   * provider's sources.
+   */
+  @Test
+  void testConcurrentReadsDuringReload() throws Exception {
+    userAgentProvider = new UserAgentProvider(UserAgentSources.bundled(), UserAgentSources.of("extra", List.of(
+        new UserAgent("Mozilla/5.0 (X11; Linux x86_64; rv:134.0) Gecko/20100101 Firefox/134.0", DeviceFilter.LINUX)),
+        10));
+    sampler = userAgentProvider.createDiverseSampler(16);
+
+    LongAdder reloads = new LongAdder();
+    Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    Thread reloader = new Thread(() -> {
+      try {
+        while (!Thread.currentThread().isInterrupted()) {
+          userAgentProvider.reload("extra");
+          reloads.increment();
+        }
+      } catch (Throwable e) {
+        failures.add(e);
+      }
+    });
+    reloader.start();
+    long ops;
+    try {
+      ops = hammer(Executors::newFixedThreadPool, 8, RUN_MILLIS);
+    } finally {
+      reloader.interrupt();
+      reloader.join();
+    }
+
+    assertTrue(failures.isEmpty(), "Reload failed: " + failures.peek());
+    assertTrue(reloads.sum() > 0, "Expected reloads to complete");
+    logger.info("{} operations on 8 platform threads during {} reloads without failures", ops, reloads.sum());
+  }
+
+  /**
+   * Records the throughput of the mixed read workload for an increasing number
+   * of platform threads. With {@code -Dstress.enforce=true} it fails if
+   * throughput collapses under contention.
+   */
+  @Test
+  void testThroughputScaling() throws Exception {
+    List<String> csv = new ArrayList<>();
+    csv.add("threads,ops_per_second,speedup");
+    double baseline = 0;
+    double lowestSpeedup = Double.MAX_VALUE;
+    for (int threads : THREAD_COUNTS) {
+      long ops = hammer(Executors::newFixedThreadPool, threads, RUN_MILLIS);
+      double opsPerSecond = ops * 1_000.0 / RUN_MILLIS;
+      if (baseline == 0) {
+        baseline = opsPerSecond;
+      }
+      double speedup = opsPerSecond / baseline;
+      lowestSpeedup = Math.min(lowestSpeedup, speedup);
+      csv.add(String.format("%d,%.0f,%.2f", threads, opsPerSecond, speedup));
+      logger.info("Scaling: {} threads -> {} ops/s ({}x)", threads, String.format("%.0f", opsPerSecond),
+          String.format("%.2f", speedup));
+    }
+    writeCsv(csv);
+
+    logger.info("Scaling curve for {} available processors written to {} (threshold {})",
+        Runtime.getRuntime().availableProcessors(), SCALING_CSV, ENFORCE ? "enforced" : "not enforced");
+    if (ENFORCE) {
+      assertTrue(lowestSpeedup > 0.5, "Throughput collapsed under contention: lowest speedup " + lowestSpeedup);
+    }
+  }
+
+  /**
+   * Runs the mixed read workload on the given number of threads for a fixed
+   * time and fails on any null result or exception.
+   *
+   * @param executorFactory Creates the executor for the given thread count.
+   * @param threads         The number of concurrent workers.
+   * @param runMillis       How long the workers keep running.
+   * @return The total number of operations completed.
+   */
+  private long hammer(IntFunction<ExecutorService> executorFactory, int threads, long runMillis) throws Exception {
+    LongAdder ops = new LongAdder();
+    // A deadline rather than a timer thread: CPU-bound virtual threads do not
+    // yield, so a timer could starve when carriers are scarce.
+    long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(runMillis);
+    runOnThreads(executorFactory.apply(threads), threads, () -> {
+      int i = 0;
+      while (System.nanoTime() < deadline) {
+        mixedRead(i++);
+        ops.increment();
+      }
+    });
+    return ops.sum();
+  }
+
+  /**
+   * Performs one read operation, rotating over the per-pick read paths and
+   * devices. The bulk getters are left out: they copy whole sets, so they
+   * would measure allocation rather than contention on the provider.
+   *
+   * @param i The operation number.
+   */
+  private void mixedRead(int i) {
+    DeviceFilter device = DEVICES[i % DEVICES.length];
+    switch (i % 6) {
+      case 0:
+        assertNotNull(userAgentProvider.getRandomUserAgent(), "Random user agent");
+        break;
+      case 1:
+        assertEquals(device, userAgentProvider.getRandomUserAgent(device).getDevice(), "Filtered user agent");
+        break;
+      case 2:
+        assertEquals(device, userAgentProvider.getRandomLatestUserAgent(device).getDevice(), "Latest user agent");
+        break;
+      case 3:
+        assertEquals(device, sampler.next(device).getDevice(), "Diverse user agent");
+        break;
+      case 4:
+        for (UserAgent ua : userAgentProvider.getNewestUserAgents(device, 5)) {
+          assertEquals(device, ua.getDevice(), "Newest user agent");
+        }
+        break;
+      default:
+        assertNotNull(userAgentProvider.getRandomLatestUserAgent(), "Random latest user agent");
+        break;
+    }
+  }
+
+  /**
+   * Starts the task on all threads at once, waits for completion and rethrows
+   * the first failure.
+   *
+   * @param executor The executor to run on; shut down afterwards.
+   * @param threads  The number of tasks to start.
+   * @param task     The task each thread runs.
+   */
+  private static void runOnThreads(ExecutorService executor, int threads, Runnable task) throws Exception {
+    Queue<Throwable> failures = new ConcurrentLinkedQueue<>();
+    CountDownLatch start = new CountDownLatch(1);
+    try {
+      for (int t = 0; t < threads; t++) {
+        executor.execute(() -> {
+          try {
+            start.await();
+            task.run();
+          } catch (Throwable e) {
+            failures.add(e);
+          }
+        });
+      }
+      start.countDown();
+    } finally {
+      executor.shutdown();
+      if (!executor.awaitTermination(1, TimeUnit.MINUTES)) {
+        executor.shutdownNow();
+        failures.add(new AssertionError("Stress workers did not finish in time"));
+      }
+    }
+    if (!failures.isEmpty()) {
+      Throwable first = failures.peek();
+      first.addSuppressed(new AssertionError(failures.size() + " worker(s) failed"));
+      if (first instanceof Exception) {
+        throw (Exception) first;
+      }
+      throw (Error) first;
+    }
+  }
+
+  private static void writeCsv(List<String> lines) throws IOException {
+    Files.createDirectories(SCALING_CSV.getParent());
+    Files.write(SCALING_CSV, lines);
+  }
+}
@@ -6,8 +6,28 @@ import static org.junit.jupiter.api.Assertions.assertNotNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Properties;
 import java.util.Set;
+import java.util.jar.JarEntry;
+import java.util.jar.JarOutputStream;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
 
+import org.junit.jupiter.api.Assumptions;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.slf4j.Logger;
@@ -20,6 +40,13 @@ import org.slf4j.LoggerFactory;
 class UserAgentProviderIT {
 
   private static final Logger logger = LoggerFactory.getLogger(UserAgentProviderIT.class);
+  private static final String STARTUP_PREFIX = "startup-micros=";
+  private static final String SECOND_STARTUP_PREFIX = "second-startup-micros=";
+  private static final Path CDS_DIR = Paths.get("target", "cds");
+  private static final Path NATIVE_PROBE = Paths.get("target",
+      System.getProperty("os.name").startsWith("Windows") ? "startup-probe.exe" : "startup-probe");
+  private static final String BUILD_TIME_MARKER = "bundled-dataset-initialized";
+  private static final Pattern CLASS_LOAD = Pattern.compile("\\[class,load\\] (\\S+) source:");
   private UserAgentProvider userAgentProvider;
 
   @BeforeEach
@@ -162,4 +189,231 @@ class UserAgentProviderIT {
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Measures provider startup in a fresh JVM: the first provider pays for
+   * loading and parsing the bundled dataset, further providers share it and
+   * must start faster.
+   */
+  @Test
+  void testColdStartup() throws Exception {
+    long[] startup = runStartupProbe("-Xshare:auto", System.getProperty("java.class.path"));
+
+    logger.info("Provider startup in a fresh JVM: first {} µs, second {} µs", startup[0], startup[1]);
+    assertTrue(startup[1] < startup[0], "Providers after the first should reuse the parsed dataset");
+  }
+
+  /**
+   * Builds an AppCDS archive for the provider in a training run and compares
+   * the startup time of a JVM with and without that archive.
+   * <p>
+   * CDS only archives classes loaded from JARs, so the probe is packaged into
+   * its own JAR and the test is skipped when the library itself is not on the
+   * classpath as a JAR (e.g. when run from an IDE).
+   * </p>
+   */
+  @Test
+  void testAppCdsStartup() throws Exception {
+    List<String> classPath = Arrays.stream(System.getProperty("java.class.path").split(File.pathSeparator))
+        .filter(entry -> entry.endsWith(".jar"))
+        .collect(Collectors.toList());
+    Assumptions.assumeTrue(classPath.stream().anyMatch(entry -> entry.contains("user-agent")),
+        "AppCDS requires the library on the classpath as a JAR");
+
+    Files.createDirectories(CDS_DIR);
+    Path archive = CDS_DIR.resolve("user-agent.jsa");
+    Files.deleteIfExists(archive);
+    classPath.add(0, writeProbeJar(CDS_DIR.resolve("startup-probe.jar")).toString());
+    String cp = String.join(File.pathSeparator, classPath);
+
+    long baseline = runStartupProbe("-Xshare:auto", cp)[0];
+    runStartupProbe("-XX:ArchiveClassesAtExit=" + archive, cp);
+    assertTrue(Files.exists(archive), "Training run should create the AppCDS archive");
+    long archived = runStartupProbe("-XX:SharedArchiveFile=" + archive, cp)[0];
+
+    logger.info("Provider startup without AppCDS: {} µs, with AppCDS: {} µs (archive: {})",
+        baseline, archived, archive);
+  }
+
+  /**
+   * Times {@link StartupProbe} as a native image against the same probe in a
+   * fresh JVM. The native image holds the bundled dataset in its image heap,
+   * so its first provider must start faster.
+   * <p>
+   * The image is built by the {@code native} profile ({@code make
+   * native-startup}); the test is skipped when it has not been built.
+   * </p>
+   */
+  @Test
+  void testNativeStartup() throws Exception {
+    Assumptions.assumeTrue(Files.isExecutable(NATIVE_PROBE),
+        "Native startup probe not built, run make native-startup with a GraalVM JDK");
+
+    long nativeStartup = runProbe(List.of(NATIVE_PROBE.toAbsolutePath().toString()), "native image")[0];
+    long jvmStartup = runStartupProbe("-Xshare:auto", System.getProperty("java.class.path"))[0];
+
+    logger.info("Provider startup as a native image: {} µs, in a fresh JVM: {} µs", nativeStartup, jvmStartup);
+    assertTrue(nativeStartup < jvmStartup, "Native image should not parse the bundled dataset at startup");
+  }
+
+  /**
+   * Ensures that initializing the bundled dataset, which native images do at
+   * build time, only loads JDK classes and library classes listed for build
+   * time initialization in {@code native-image.properties}. In particular no
+   * logging or Jackson class may be reached.
+   */
+  @Test
+  void testBundledDatasetOnlyReachesBuildTimeClasses() throws Exception {
+    Set<String> buildTimeClasses = readBuildTimeClasses();
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    Process process = new ProcessBuilder(java, "-Xshare:off", "-Xlog:class+load=info",
+        "-cp", System.getProperty("java.class.path"), BuildTimeProbe.class.getName())
+        .redirectErrorStream(true)
+        .start();
+
+    List<String> loaded = new ArrayList<>();
+    boolean initialized = false;
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        Matcher matcher = CLASS_LOAD.matcher(line);
+        if (line.equals(BUILD_TIME_MARKER)) {
+          initialized = true;
+        } else if (!initialized && matcher.find()) {
+          loaded.add(matcher.group(1));
+        }
+      }
+    }
+    assertEquals(0, process.waitFor(), "Build time probe failed");
+    assertTrue(initialized, "Build time probe should initialize the bundled dataset");
+
+    List<String> unexpected = loaded.stream()
+        .filter(name -> !name.startsWith("java.") && !name.startsWith("javax.") && !name.startsWith("jdk.")
+            && !name.startsWith("sun.") && !name.contains("$$Lambda"))
+        .filter(name -> !name.equals(BuildTimeProbe.class.getName()) && !buildTimeClasses.contains(name))
+        .collect(Collectors.toList());
+    assertTrue(unexpected.isEmpty(), "Classes reached at build time but not listed: " + unexpected);
+    logger.info("Bundled dataset initialization reached only listed build time classes: {}", buildTimeClasses);
+  }
+
+  /**
+   * Reads the classes listed in {@code --initialize-at-build-time}.
+   *
+   * @return The listed class names.
+   * @throws IOException If the properties cannot be read.
+   */
+  private static Set<String> readBuildTimeClasses() throws IOException {
+    Properties properties = new Properties();
+    try (InputStream in = UserAgentProviderIT.class.getClassLoader().getResourceAsStream(
+        "META-INF/native-image/io.github.boeboe/user-agent/native-image.properties")) {
+      assertNotNull(in, "native-image.properties should be on the classpath");
+      properties.load(in);
+    }
+    String args = properties.getProperty("Args", "");
+    String option = "--initialize-at-build-time=";
+    assertTrue(args.contains(option), "Build time initialization should be configured");
+    String classes = args.substring(args.indexOf(option) + option.length()).split("\\s+")[0];
+    return Set.of(classes.split(","));
+  }
+
+  /**
+   * Packages {@link StartupProbe} into a JAR so CDS can archive it.
+   *
+   * @param jar Path of the JAR to write.
+   * @return The path of the written JAR.
+   * @throws IOException If writing fails.
+   */
+  private static Path writeProbeJar(Path jar) throws IOException {
+    String entryName = StartupProbe.class.getName().replace('.', '/') + ".class";
+    try (InputStream in = StartupProbe.class.getClassLoader().getResourceAsStream(entryName);
+        OutputStream out = Files.newOutputStream(jar);
+        JarOutputStream jarOut = new JarOutputStream(out)) {
+      assertNotNull(in, "Startup probe class file should be on the classpath");
+      jarOut.putNextEntry(new JarEntry(entryName));
+      in.transferTo(jarOut);
+      jarOut.closeEntry();
+    }
+    return jar;
+  }
+
+  /**
+   * Runs {@link StartupProbe} in a fresh JVM.
+   *
+   * @param cdsOption The CDS option to pass to the JVM.
+   * @param classPath The class path of the JVM.
+   * @return Startup times of the first and second provider reported by the
+   *         probe, in microseconds.
+   * @throws Exception If the JVM cannot be started or fails.
+   */
+  private static long[] runStartupProbe(String cdsOption, String classPath) throws Exception {
+    String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+    return runProbe(List.of(java, cdsOption, "-cp", classPath, StartupProbe.class.getName()), cdsOption);
+  }
+
+  /**
+   * Runs {@link StartupProbe}, on a JVM or as a native image, and reads the
+   * startup times it reports.
+   *
+   * @param command The command that starts the probe.
+   * @param label   Describes the run in failure messages.
+   * @return Startup times of the first and second provider reported by the
+   *         probe, in microseconds.
+   * @throws Exception If the probe cannot be started or fails.
+   */
+  private static long[] runProbe(List<String> command, String label) throws Exception {
+    Process process = new ProcessBuilder(command)
+        .redirectErrorStream(true)
+        .start();
+
+    long[] startupMicros = { -1, -1 };
+    try (BufferedReader reader = new BufferedReader(
+        new InputStreamReader(process.getInputStream(), StandardCharsets.UTF_8))) {
+      List<String> output = new ArrayList<>();
+      for (String line = reader.readLine(); line != null; line = reader.readLine()) {
+        output.add(line);
+        if (line.startsWith(STARTUP_PREFIX)) {
+          startupMicros[0] = Long.parseLong(line.substring(STARTUP_PREFIX.length()));
+        } else if (line.startsWith(SECOND_STARTUP_PREFIX)) {
+          startupMicros[1] = Long.parseLong(line.substring(SECOND_STARTUP_PREFIX.length()));
+        }
+      }
+      assertEquals(0, process.waitFor(), "Startup probe failed with " + label + ": " + output);
+    }
+    assertTrue(startupMicros[0] >= 0 && startupMicros[1] >= 0, "Startup probe should report its startup times");
+    return startupMicros;
+  }
+
+  /**
+   * Entry point for the forked JVM of
+   * {@link #testBundledDatasetOnlyReachesBuildTimeClasses()}.
+   */
+  static final class BuildTimeProbe {
+    public static void main(String[] args) throws Exception {
+      Class.forName("io.github.boeboe.useragent.BundledUserAgents");
+      System.out.println(BUILD_TIME_MARKER);
+    }
+  }
+
+  /**
+   * Entry point for the forked JVMs of {@link #testColdStartup()} and
+   * {@link #testAppCdsStartup()}, and of the native image timed by
+   * {@link #testNativeStartup()}.
+   */
+  static final class StartupProbe {
+    public static void main(String[] args) {
+      long start = System.nanoTime();
+      UserAgentProvider provider = new UserAgentProvider();
+      if (provider.getRandomUserAgent() == null) {
+        System.exit(1);
+      }
+      System.out.println(STARTUP_PREFIX + (System.nanoTime() - start) / 1_000);
+
+      start = System.nanoTime();
+      provider = new UserAgentProvider();
+      if (provider.getRandomUserAgent() == null) {
+        System.exit(1);
+      }
+      System.out.println(SECOND_STARTUP_PREFIX + (System.nanoTime() - start) / 1_000);
+    }
+  }
+}
@@ -3,16 +3,42 @@ package io.github.boeboe.useragent;
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.junit.jupiter.api.Assertions.assertFalse;
 import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.net.URL;
+import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
 
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.condition.DisabledInNativeImage;
+import org.junit.jupiter.api.io.TempDir;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import com.sun.net.httpserver.HttpServer;
+
 /**
  * Unit tests for {@link UserAgentProvider}.
  */
@@ -63,6 +89,61 @@ class UserAgentProviderTest {
     logger.info("Latest user agents loaded: {}", latestUserAgents.size());
   }
 
+  /**
+   * Pins the number of distinct bundled user agents. Entries repeated within or
+   * across the bundled files are kept once, so this is lower than the 10108
+   * entries the files contain.
+   */
+  @Test
+  void testBundledUserAgentsAreDistinct() {
+    assertEquals(9478, userAgentProvider.getAllUserAgents().size(), "Distinct bundled user agents");
+    assertEquals(9478, userAgentProvider.getAllUserAgents().stream()
+        .map(ua -> ua.getDevice() + "\n" + ua.getUserAgent())
+        .distinct()
+        .count(), "Every user agent string should appear once per device");
+  }
+
+  /**
+   * Ensures the Jackson-free reader used for the bundled datasets parses every
+   * bundled file exactly like {@link UserAgentLoader}, and that it finds the
+   * same files in both bundled directories.
+   */
+  @Test
+  void testBundledReaderMatchesJackson() throws IOException {
+    ClassLoader classLoader = BundledUserAgents.class.getClassLoader();
+    for (String dir : List.of(BundledUserAgents.RANDOM_DIR, BundledUserAgents.LATEST_DIR)) {
+      for (DeviceFilter device : DeviceFilter.values()) {
+        String resource = dir + device.toLowerCase() + ".json";
+        URL url = classLoader.getResource(resource);
+        assertNotNull(url, "Missing bundled file " + resource);
+        String text;
+        try (InputStream in = url.openStream()) {
+          text = new String(in.readAllBytes(), StandardCharsets.UTF_8);
+        }
+        assertEquals(UserAgentLoader.readUserAgents(url), BundledUserAgentReader.read(text, resource), resource);
+      }
+      assertEquals(UserAgentLoader.loadUserAgents(dir, classLoader), BundledUserAgentReader.readUserAgents(dir), dir);
+    }
+  }
+
+  /**
+   * Ensures the bundled reader accepts the values Jackson accepts and rejects
+   * malformed escapes and unknown properties with a clear error.
+   */
+  @Test
+  void testBundledReaderEdgeCases(@TempDir Path dir) throws IOException {
+    String text = "\uFEFF[ {\"useragent\": \"A\\u00e9\\\"\\/\\n\", \"device\": \"LINUX\"},"
+        + " {\"useragent\": 42, \"device\": null}, {\"useragent\": true}, {} ]";
+    Path file = dir.resolve("edge.json");
+    Files.writeString(file, text);
+    assertEquals(UserAgentLoader.readUserAgents(file.toUri().toURL()), BundledUserAgentReader.read(text, "edge.json"));
+
+    for (String malformed : List.of("[{\"useragent\": \"\\uZZZZ\"}]", "[{\"useragent\": \"\\x\"}]",
+        "[{\"agent\": \"A\"}]", "[{\"useragent\": {}}]", "[{\"useragent\": \"A\"}")) {
+      assertThrows(IllegalStateException.class, () -> BundledUserAgentReader.read(malformed, "bad.json"), malformed);
+    }
+  }
+
   /**
    * Ensures that user agent collections returned are immutable.
    */
@@ -161,4 +242,484 @@ class UserAgentProviderTest {
       }
     }
   }
-}
\ No newline at end of file
+
+  /**
+   * Ensures user agents handed out by one provider can be changed without
+   * affecting other providers sharing the bundled dataset.
+   */
+  @Test
+  void testChangingUserAgentDoesNotAffectOtherProviders() {
+    UserAgentProvider other = new UserAgentProvider();
+    UserAgent original = userAgentProvider.getNewestUserAgents(DeviceFilter.CHROME, 1).get(0);
+    String originalString = original.getUserAgent();
+
+    original.setUserAgent("Changed");
+    original.setDevice(DeviceFilter.LINUX);
+    for (UserAgent ua : new ArrayList<>(userAgentProvider.getAllUserAgents())) {
+      ua.setUserAgent("Changed");
+    }
+    userAgentProvider.getRandomUserAgent().setUserAgent("Changed");
+
+    assertEquals(originalString, other.getNewestUserAgents(DeviceFilter.CHROME, 1).get(0).getUserAgent(),
+        "Other provider should still see the original user agent");
+    assertEquals(originalString, userAgentProvider.getNewestUserAgents(DeviceFilter.CHROME, 1).get(0).getUserAgent(),
+        "Changing a returned user agent should not change the provider either");
+    assertTrue(other.getAllUserAgents().stream().noneMatch(ua -> ua.getUserAgent().equals("Changed")),
+        "Other provider should not see changed user agents");
+  }
+
+  /**
+   * Ensures the latest user agents are derived from version ordering, also for
+   * a user-supplied dataset.
+   */
+  @Test
+  void testLatestUserAgentsAreDerivedFromVersions() {
+    UserAgent chrome140 = new UserAgent(
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/140.0.0.0 Safari/537.36",
+        DeviceFilter.CHROME);
+    UserAgent chrome132 = new UserAgent(
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/132.0.0.0 Safari/537.36",
+        DeviceFilter.CHROME);
+    UserAgent chrome139Mac = new UserAgent(
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_15_7) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/139.0.0.0 Safari/537.36",
+        DeviceFilter.CHROME);
+    UserAgent chrome55Mac = new UserAgent(
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_9_5) AppleWebKit/603.5 (KHTML, like Gecko) Chrome/55.0.1937.352 Safari/535",
+        DeviceFilter.CHROME);
+    UserAgentProvider provider = new UserAgentProvider(List.of(chrome132, chrome140, chrome139Mac, chrome55Mac));
+
+    Set<UserAgent> latestUserAgents = provider.getLatestUserAgents();
+    assertEquals(Set.of(chrome140, chrome139Mac), latestUserAgents,
+        "Latest should hold the newest versions, dropping those trailing their browser family");
+    assertTrue(latestUserAgents.contains(provider.getRandomLatestUserAgent(DeviceFilter.CHROME)),
+        "Random latest user agent should come from the derived latest set");
+  }
+
+  /**
+   * Ensures no derived latest user agent of the bundled dataset trails the
+   * newest major version of its browser family on the same device by more
+   * than a few versions, and that every device has a bounded latest set.
+   */
+  @Test
+  void testLatestUserAgentsAreCurrentForTheirBrowser() {
+    for (DeviceFilter device : DeviceFilter.values()) {
+      Map<String, Integer> newestMajorByBrowser = new HashMap<>();
+      for (UserAgent ua : userAgentProvider.getAllUserAgents()) {
+        if (ua.getDevice() == device) {
+          UserAgentVersion version = UserAgentVersion.parse(ua.getUserAgent());
+          newestMajorByBrowser.merge(version.getBrowser(), version.getMajor(), Math::max);
+        }
+      }
+
+      int latest = 0;
+      for (UserAgent ua : userAgentProvider.getLatestUserAgents()) {
+        if (ua.getDevice() != device) {
+          continue;
+        }
+        latest++;
+        UserAgentVersion version = UserAgentVersion.parse(ua.getUserAgent());
+        int lag = newestMajorByBrowser.get(version.getBrowser()) - version.getMajor();
+        assertTrue(lag <= UserAgentIndex.MAX_MAJOR_LAG, "Latest " + device + " user agent " + version
+            + " trails its browser family by " + lag + " major versions");
+      }
+      assertTrue(latest > 0 && latest <= UserAgentIndex.LATEST_PER_DEVICE,
+          "Unexpected number of latest user agents for " + device + ": " + latest);
+    }
+  }
+
+  /**
+   * Ensures discontinued browsers such as Internet Explorer never count as
+   * latest on devices that have maintained browsers, while they still do on
+   * a device that only holds discontinued browsers.
+   */
+  @Test
+  void testLatestUserAgentsAreNotFromDiscontinuedBrowsers() {
+    for (DeviceFilter device : List.of(DeviceFilter.WINDOWS, DeviceFilter.LINUX, DeviceFilter.IPHONE)) {
+      for (UserAgent ua : userAgentProvider.getLatestUserAgents()) {
+        if (ua.getDevice() == device) {
+          assertFalse(UserAgentVersion.parse(ua.getUserAgent()).isDiscontinued(),
+              "Latest " + device + " user agent from a discontinued browser: " + ua.getUserAgent());
+        }
+      }
+    }
+
+    UserAgent chrome = new UserAgent(
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/132.0.0.0 Safari/537.36",
+        DeviceFilter.WINDOWS);
+    UserAgent explorer = new UserAgent(
+        "Mozilla/5.0 (Windows NT 10.0; WOW64; Trident/7.0; rv:11.0) like Gecko", DeviceFilter.WINDOWS);
+    UserAgent explorerOnly = new UserAgent(
+        "Mozilla/5.0 (Windows NT 10.0; WOW64; Trident/7.0; rv:11.0) like Gecko", DeviceFilter.EXPLORER);
+    UserAgentProvider provider = new UserAgentProvider(List.of(explorer, chrome, explorerOnly));
+
+    assertEquals(Set.of(chrome, explorerOnly), provider.getLatestUserAgents());
+    assertEquals(List.of(chrome, explorer), provider.getNewestUserAgents(DeviceFilter.WINDOWS, 10));
+  }
+
+  /**
+   * Ensures the newest user agents cover every browser/platform before
+   * repeating one, and honor the requested count.
+   */
+  @Test
+  void testGetNewestUserAgents() {
+    UserAgent chrome140 = new UserAgent(
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/140.0.0.0 Safari/537.36",
+        DeviceFilter.CHROME);
+    UserAgent chrome132 = new UserAgent(
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/132.0.0.0 Safari/537.36",
+        DeviceFilter.CHROME);
+    UserAgent chrome55Mac = new UserAgent(
+        "Mozilla/5.0 (Macintosh; Intel Mac OS X 10_9_5) AppleWebKit/603.5 (KHTML, like Gecko) Chrome/55.0.1937.352 Safari/535",
+        DeviceFilter.CHROME);
+    UserAgentProvider provider = new UserAgentProvider(List.of(chrome55Mac, chrome132, chrome140));
+
+    assertEquals(List.of(chrome140, chrome132, chrome55Mac), provider.getNewestUserAgents(DeviceFilter.CHROME, 10));
+    assertEquals(List.of(chrome140), provider.getNewestUserAgents(DeviceFilter.CHROME, 1));
+    assertTrue(provider.getNewestUserAgents(DeviceFilter.FIREFOX, 5).isEmpty(), "No Firefox user agents expected");
+    assertThrows(IllegalArgumentException.class, () -> provider.getNewestUserAgents(DeviceFilter.CHROME, -1));
+
+    for (DeviceFilter device : DeviceFilter.values()) {
+      List<UserAgent> newest = userAgentProvider.getNewestUserAgents(device, 3);
+      assertTrue(newest.size() <= 3, "At most 3 newest user agents expected for " + device);
+      assertTrue(userAgentProvider.getLatestUserAgents().contains(newest.get(0)),
+          "The newest user agent for " + device + " should be one of the latest");
+    }
+  }
+
+  /**
+   * Ensures the diverse sampler never repeats a cluster within its window, and
+   * measures the diversity gained over plain random picks and the cost per pick.
+   */
+  @Test
+  void testDiverseSamplerAvoidsNearDuplicates() {
+    int windowSize = 16;
+    int picks = 10_000;
+    DiverseUserAgentSampler sampler = userAgentProvider.createDiverseSampler(windowSize);
+    assertEquals(windowSize, sampler.getWindowSize());
+
+    for (DeviceFilter device : DeviceFilter.values()) {
+      assertEquals(0, countWindowRepeats(() -> sampler.next(device), windowSize, 1_000),
+          "No cluster should repeat within the window for " + device);
+    }
+
+    int randomRepeats = countWindowRepeats(() -> userAgentProvider.getRandomUserAgent(DeviceFilter.EXPLORER),
+        windowSize, picks);
+    int diverseRepeats = countWindowRepeats(() -> sampler.next(DeviceFilter.EXPLORER), windowSize, picks);
+    assertEquals(0, diverseRepeats, "No cluster should repeat within the window");
+    logger.info("Explorer picks repeating a cluster within {} picks: random {} of {}, diverse {} of {}",
+        windowSize, randomRepeats, picks, diverseRepeats, picks);
+
+    long start = System.nanoTime();
+    for (int i = 0; i < picks; i++) {
+      assertNotNull(userAgentProvider.getRandomUserAgent(DeviceFilter.EXPLORER), "Random pick expected");
+    }
+    long randomNanos = (System.nanoTime() - start) / picks;
+    start = System.nanoTime();
+    for (int i = 0; i < picks; i++) {
+      assertNotNull(sampler.next(DeviceFilter.EXPLORER), "Diverse pick expected");
+    }
+    long diverseNanos = (System.nanoTime() - start) / picks;
+    logger.info("Cost per explorer pick: random {} ns, diverse {} ns", randomNanos, diverseNanos);
+  }
+
+  /**
+   * Ensures the diverse sampler cycles through all clusters when there are
+   * fewer clusters than the window size.
+   */
+  @Test
+  void testDiverseSamplerWithSmallDataset() {
+    UserAgentProvider provider = new UserAgentProvider(List.of(
+        new UserAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:134.0) Gecko/20100101 Firefox/134.0",
+            DeviceFilter.FIREFOX),
+        new UserAgent("Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:134.0) Gecko/20100101 Firefox/134.1",
+            DeviceFilter.FIREFOX),
+        new UserAgent("Mozilla/5.0 (X11; Linux x86_64; rv:134.0) Gecko/20100101 Firefox/134.0",
+            DeviceFilter.FIREFOX),
+        new UserAgent("Mozilla/5.0 (Macintosh; Intel Mac OS X 14.7; rv:134.0) Gecko/20100101 Firefox/134.0",
+            DeviceFilter.FIREFOX)));
+    DiverseUserAgentSampler sampler = provider.createDiverseSampler(10);
+
+    assertEquals(0, countWindowRepeats(sampler::next, 2, 1_000), "Three clusters should be picked in turn");
+    assertNull(sampler.next(DeviceFilter.CHROME), "No Chrome user agents expected");
+    assertThrows(IllegalArgumentException.class, () -> provider.createDiverseSampler(-1));
+  }
+
+  /**
+   * Ensures sources are merged in priority order: a user agent string of a
+   * higher priority source masks that string in lower priority sources, while
+   * a source may still list one string for several devices.
+   */
+  @Test
+  void testSourcesAreMergedByPriority() {
+    String ua = "Mozilla/5.0 (X11; Linux x86_64; rv:134.0) Gecko/20100101 Firefox/134.0";
+    String lowOnly = "Mozilla/5.0 (X11; Linux x86_64; rv:133.0) Gecko/20100101 Firefox/133.0";
+    UserAgent low = new UserAgent(ua, DeviceFilter.FIREFOX);
+    UserAgent lowOther = new UserAgent(ua, DeviceFilter.LINUX);
+    UserAgent lowUnique = new UserAgent(lowOnly, DeviceFilter.LINUX);
+    UserAgent high = new UserAgent(ua, DeviceFilter.ANDROID);
+
+    UserAgentProvider provider = new UserAgentProvider(
+        UserAgentSources.of("low", List.of(low, lowOther, lowUnique, low), 0),
+        UserAgentSources.of("high", List.of(high), 10));
+    assertEquals(Set.of(high, lowUnique), provider.getAllUserAgents(),
+        "Higher priority source should decide the devices of a shared user agent string");
+    assertEquals(high, provider.getRandomUserAgent(DeviceFilter.ANDROID));
+    assertNull(provider.getRandomUserAgent(DeviceFilter.FIREFOX), "Masked entry should not be picked");
+
+    UserAgentProvider reversed = new UserAgentProvider(
+        UserAgentSources.of("low", List.of(low, lowOther, lowUnique, low), 10),
+        UserAgentSources.of("high", List.of(high), 0));
+    assertEquals(Set.of(low, lowOther, lowUnique), reversed.getAllUserAgents(),
+        "Duplicates within a source should be dropped, one string on several devices kept");
+
+    assertThrows(IllegalArgumentException.class, () -> new UserAgentProvider(
+        UserAgentSources.of("same", List.of(low), 0),
+        UserAgentSources.of("same", List.of(high), 1)));
+    assertThrows(IllegalArgumentException.class, () -> provider.reload("unknown"));
+  }
+
+  /**
+   * Ensures sources are loaded on the provider's own loader threads rather than
+   * the common fork/join pool, and that a failing source fails the provider.
+   */
+  @Test
+  void testSourcesAreLoadedOnDedicatedThreads() {
+    Set<String> threads = ConcurrentHashMap.newKeySet();
+    UserAgentSource[] sources = new UserAgentSource[3];
+    for (int i = 0; i < sources.length; i++) {
+      String name = "source-" + i;
+      sources[i] = new UserAgentSource() {
+        @Override
+        public String getName() {
+          return name;
+        }
+
+        @Override
+        public Collection<UserAgent> load() {
+          threads.add(Thread.currentThread().getName());
+          return List.of(new UserAgent("Mozilla/5.0 (X11; Linux x86_64; rv:134.0) Gecko/20100101 Firefox/134.0 "
+              + name, DeviceFilter.FIREFOX));
+        }
+      };
+    }
+    assertEquals(3, new UserAgentProvider(sources).getAllUserAgents().size());
+    assertEquals(Set.of("user-agent-source-loader"), threads, "Sources should load on dedicated threads");
+
+    UserAgentSource failing = new UserAgentSource() {
+      @Override
+      public String getName() {
+        return "failing";
+      }
+
+      @Override
+      public Collection<UserAgent> load() throws IOException {
+        throw new IOException("unreachable");
+      }
+    };
+    RuntimeException e = assertThrows(RuntimeException.class,
+        () -> new UserAgentProvider(UserAgentSources.bundled(), failing));
+    assertTrue(e.getMessage().contains("failing"), "Failure should name the source: " + e.getMessage());
+  }
+
+  /**
+   * Ensures file and URL sources are loaded and picked up again on reload.
+   */
+  @Test
+  void testFileAndUrlSourcesReload(@TempDir Path dir) throws IOException {
+    Path file = dir.resolve("useragents.json");
+    writeUserAgents(file, "Mozilla/5.0 (X11; Linux x86_64; rv:133.0) Gecko/20100101 Firefox/133.0");
+
+    AtomicReference<String> body = new AtomicReference<>(json(
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/131.0.0.0 Safari/537.36"));
+    HttpServer server = HttpServer.create(new InetSocketAddress("127.0.0.1", 0), 0);
+    server.createContext("/useragents.json", exchange -> {
+      byte[] bytes = body.get().getBytes(StandardCharsets.UTF_8);
+      exchange.sendResponseHeaders(200, bytes.length);
+      try (OutputStream out = exchange.getResponseBody()) {
+        out.write(bytes);
+      }
+    });
+    server.start();
+    try {
+      URL url = URI.create("http://127.0.0.1:" + server.getAddress().getPort() + "/useragents.json").toURL();
+      UserAgentProvider provider = new UserAgentProvider(
+          UserAgentSources.bundled(),
+          UserAgentSources.file("file", file, 10),
+          UserAgentSources.url("remote", url, 5));
+      int bundled = new UserAgentProvider().getAllUserAgents().size();
+      assertEquals(bundled + 2, provider.getAllUserAgents().size());
+
+      writeUserAgents(file, "Mozilla/5.0 (X11; Linux x86_64; rv:135.0) Gecko/20100101 Firefox/135.0");
+      body.set(json(
+          "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/134.0.0.0 Safari/537.36",
+          "Mozilla/5.0 (Windows NT 10.0; Win64; x64) AppleWebKit/537.36 (KHTML, like Gecko) Chrome/134.0.0.0 Safari/537.36 Edg/134.0.0.0"));
+      provider.reload("file");
+      provider.reload("remote");
+
+      assertEquals(bundled + 3, provider.getAllUserAgents().size());
+      UserAgent newestFirefox = provider.getNewestUserAgents(DeviceFilter.LINUX, Integer.MAX_VALUE).stream()
+          .filter(ua -> ua.getUserAgent().contains("Firefox/"))
+          .findFirst()
+          .orElseThrow();
+      assertTrue(newestFirefox.getUserAgent().contains("Firefox/135.0"),
+          "Reloaded file should provide the newest Linux Firefox user agent");
+    } finally {
+      server.stop(0);
+    }
+  }
+
+  /**
+   * Ensures a reload only loads the reloaded source again and that samplers
+   * follow the reloaded dataset.
+   */
+  @Test
+  void testReloadIsIncremental() {
+    CountingSource first = new CountingSource("first", 1,
+        "Mozilla/5.0 (X11; Linux x86_64; rv:134.0) Gecko/20100101 Firefox/134.0");
+    CountingSource second = new CountingSource("second", 0,
+        "Mozilla/5.0 (Windows NT 10.0; Win64; x64; rv:134.0) Gecko/20100101 Firefox/134.0");
+    UserAgentProvider provider = new UserAgentProvider(first, second);
+    DiverseUserAgentSampler sampler = provider.createDiverseSampler(4);
+    assertEquals(1, first.loads.get());
+    assertEquals(1, second.loads.get());
+
+    second.userAgent = "Mozilla/5.0 (Macintosh; Intel Mac OS X 14.7; rv:134.0) Gecko/20100101 Firefox/134.0";
+    provider.reload("second");
+
+    assertEquals(1, first.loads.get(), "Unchanged source should not be loaded again");
+    assertEquals(2, second.loads.get());
+    for (int i = 0; i < 100; i++) {
+      assertFalse(sampler.next().getUserAgent().contains("Windows"), "Sampler should follow the reload");
+    }
+  }
+
+  /**
+   * Ensures sources registered with {@link java.util.ServiceLoader} are added
+   * to the bundled user agents by the default constructor.
+   */
+  @Test
+  @DisabledInNativeImage
+  void testSourcesAreDiscovered(@TempDir Path dir) throws IOException {
+    Path services = dir.resolve("META-INF/services/" + UserAgentSource.class.getName());
+    Files.createDirectories(services.getParent());
+    Files.writeString(services, DiscoveredSource.class.getName() + "\n");
+
+    Thread thread = Thread.currentThread();
+    ClassLoader previous = thread.getContextClassLoader();
+    try (URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() }, previous)) {
+      thread.setContextClassLoader(loader);
+      UserAgentProvider provider = new UserAgentProvider();
+      assertEquals(userAgentProvider.getAllUserAgents().size() + 1, provider.getAllUserAgents().size());
+      assertTrue(provider.getAllUserAgents().stream()
+          .anyMatch(ua -> ua.getUserAgent().equals(DiscoveredSource.USER_AGENT)));
+    } finally {
+      thread.setContextClassLoader(previous);
+    }
+  }
+
+  /**
+   * Ensures classpath sources resolve their resources with the given class
+   * loader, or the context class loader, rather than the library's own.
+   * Native images cannot load classes or resources from a new class loader,
+   * so this and the discovery test only run on the JVM.
+   */
+  @Test
+  @DisabledInNativeImage
+  void testClasspathSourceUsesClassLoader(@TempDir Path dir) throws IOException {
+    Files.createDirectories(dir.resolve("extra"));
+    writeUserAgents(dir.resolve("extra/linux.json"), DiscoveredSource.USER_AGENT);
+
+    Thread thread = Thread.currentThread();
+    ClassLoader previous = thread.getContextClassLoader();
+    try (URLClassLoader loader = new URLClassLoader(new URL[] { dir.toUri().toURL() }, previous)) {
+      UserAgentProvider explicit = new UserAgentProvider(UserAgentSources.classpath("extra", "extra/", loader, 0));
+      assertEquals(1, explicit.getAllUserAgents().size());
+
+      thread.setContextClassLoader(loader);
+      UserAgentProvider context = new UserAgentProvider(UserAgentSources.classpath("extra", "extra/", 0));
+      assertEquals(explicit.getAllUserAgents(), context.getAllUserAgents());
+    } finally {
+      thread.setContextClassLoader(previous);
+    }
+  }
+
+  /** Source registered through a service file in {@link #testSourcesAreDiscovered}. */
+  public static class DiscoveredSource implements UserAgentSource {
+    static final String USER_AGENT = "Mozilla/5.0 (X11; Linux x86_64; rv:999.0) Gecko/20100101 Firefox/999.0";
+
+    @Override
+    public String getName() {
+      return "discovered";
+    }
+
+    @Override
+    public Collection<UserAgent> load() {
+      return List.of(new UserAgent(USER_AGENT, DeviceFilter.FIREFOX));
+    }
+  }
+
+  /** Single user agent source that counts its loads. */
+  private static class CountingSource implements UserAgentSource {
+    final String name;
+    final int priority;
+    final AtomicInteger loads = new AtomicInteger();
+    volatile String userAgent;
+
+    CountingSource(String name, int priority, String userAgent) {
+      this.name = name;
+      this.priority = priority;
+      this.userAgent = userAgent;
+    }
+
+    @Override
+    public String getName() {
+      return name;
+    }
+
+    @Override
+    public int getPriority() {
+      return priority;
+    }
+
+    @Override
+    public Collection<UserAgent> load() {
+      loads.incrementAndGet();
+      return List.of(new UserAgent(userAgent, DeviceFilter.FIREFOX));
+    }
+  }
+
+  private static void writeUserAgents(Path file, String... userAgents) throws IOException {
+    Files.writeString(file, json(userAgents));
+  }
+
+  private static String json(String... userAgents) {
+    StringBuilder json = new StringBuilder("[");
+    for (String ua : userAgents) {
+      json.append(json.length() > 1 ? "," : "")
+          .append("{\"device\":\"").append(ua.contains("Firefox") ? "linux" : "windows")
+          .append("\",\"useragent\":\"").append(ua).append("\"}");
+    }
+    return json.append("]").toString();
+  }
+
+  /**
+   * Counts the picks whose signature cluster was already picked within the
+   * preceding {@code windowSize} picks.
+   */
+  private static int countWindowRepeats(Supplier<UserAgent> picker, int windowSize, int picks) {
+    Deque<String> window = new ArrayDeque<>();
+    int repeats = 0;
+    for (int i = 0; i < picks; i++) {
+      UserAgent ua = picker.get();
+      String cluster = ua.getDevice() + " " + UserAgentClusters.signature(ua.getUserAgent());
+      if (window.contains(cluster)) {
+        repeats++;
+      }
+      window.addLast(cluster);
+      if (window.size() > windowSize) {
+        window.removeFirst();
+      }
+    }
+    return repeats;
+  }
+}